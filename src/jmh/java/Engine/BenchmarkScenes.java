@@ -0,0 +1,75 @@
+package Engine;
+
+import Drawable.Instance;
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.Prototype;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import Drawable.Vector3;
+
+import java.awt.*;
+
+// Сцены для бенчмарков: квадратная сетка из чередующихся сфер и параллелепипедов в плоскости z = 0
+public class BenchmarkScenes {
+    public static final float SPACING = 3f;
+    private static final Material[] MATERIALS = {Material.MATTE, Material.SEMI_MATTE, Material.GLOSS, Material.GLASS};
+    private static final Color[] COLORS = {Color.RED, Color.GREEN, Color.BLUE, Color.ORANGE, Color.WHITE};
+
+    public static Scene grid(int count) {
+        int columns = columns(count);
+        float extent = columns * SPACING;
+        // Сетка с центром в (20, 30) - там же, где и источник света контекста; камера видит её целиком
+        Camera camera = new Camera(new Vector3(20, 30, -extent * 0.6), Matrix4x4.identity(), 90);
+        Scene scene = new Scene(camera);
+        for (int i = 0; i < count; i++) {
+            Vector3 center = cellCenter(i, columns);
+            Color color = COLORS[i % COLORS.length];
+            Material material = MATERIALS[i % MATERIALS.length];
+            if (i % 2 == 0) {
+                scene.addShape(new Sphere(center, color, SPACING * 0.4, 4, 4, new Vector3(0, 0, 0), material));
+            } else {
+                scene.addShape(new Parallelepiped(center, color, SPACING * 0.6, SPACING * 0.6, SPACING * 0.6,
+                        new Vector3(0, 0, 0), material));
+            }
+        }
+        return scene;
+    }
+
+    // Та же сетка из экземпляров двух прототипов: цвета и материалы задаются заменой у экземпляра
+    public static Scene instancedGrid(int count) {
+        int columns = columns(count);
+        float extent = columns * SPACING;
+        Camera camera = new Camera(new Vector3(20, 30, -extent * 0.6), Matrix4x4.identity(), 90);
+        Scene scene = new Scene(camera);
+        Vector3 origin = new Vector3(0, 0, 0);
+        Prototype sphere = new Prototype(new Sphere(origin, Color.WHITE, SPACING * 0.4, 4, 4, origin, Material.MATTE));
+        Prototype box = new Prototype(new Parallelepiped(origin, Color.WHITE, SPACING * 0.6, SPACING * 0.6, SPACING * 0.6,
+                origin, Material.MATTE));
+        for (int i = 0; i < count; i++) {
+            scene.addInstance(new Instance(i % 2 == 0 ? sphere : box, cellCenter(i, columns), origin, 1,
+                    COLORS[i % COLORS.length], MATERIALS[i % MATERIALS.length]));
+        }
+        return scene;
+    }
+
+    public static int columns(int count) {
+        return (int) Math.ceil(Math.sqrt(count));
+    }
+
+    public static Vector3 cellCenter(int index, int columns) {
+        float origin = -(columns - 1) * SPACING * 0.5f;
+        return new Vector3(20 + origin + (index % columns) * SPACING, 30 + origin + (index / columns) * SPACING, 0);
+    }
+
+    // Ядро без запуска: сцена загружается для одиночных запросов intersectOne/closestHit/shadowRay
+    public static RayTracingKernel hostKernel(Scene scene, boolean useBvh) {
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.flush();
+        RayTracingKernel kernel = new RayTracingKernel(1, 1, new float[]{20, 30, -30}, new int[1], 10, 10);
+        kernel.setScene(sceneBuffer.getBoxData(), sceneBuffer.getSphereData(), sceneBuffer.buildBVH());
+        kernel.setEmitters(sceneBuffer.getEmitterData(), sceneBuffer.getEmitterCdf(), sceneBuffer.getEmitterCount());
+        kernel.setUseBvh(useBvh);
+        return kernel;
+    }
+}
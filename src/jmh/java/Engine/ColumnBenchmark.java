@@ -0,0 +1,69 @@
+package Engine;
+
+import Drawable.Vector3;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Один луч против всех фигур: перебор столбцов ShapeColumns на Vector API против обхода BVH ядра
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class ColumnBenchmark {
+    private static final int RAYS = 1024;
+
+    @Param({"16", "64", "256", "1024"})
+    public int shapes;
+
+    private RayTracingKernel kernel;
+    private ShapeColumns columns;
+    private final float[] rays = new float[RAYS * 6];
+
+    @Setup
+    public void setup() {
+        Scene scene = BenchmarkScenes.grid(shapes);
+        kernel = BenchmarkScenes.hostKernel(scene, true);
+        columns = scene.getSceneBuffer().getColumns();
+
+        // Лучи из камеры в случайные точки сетки, как в TraversalBenchmark
+        Vector3 eye = scene.getCamera().getPosition();
+        float half = BenchmarkScenes.columns(shapes) * BenchmarkScenes.SPACING * 0.5f;
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < RAYS; i++) {
+            float dx = 20 + (float) random.nextDouble(-half, half) - (float) eye.x;
+            float dy = 30 + (float) random.nextDouble(-half, half) - (float) eye.y;
+            float dz = (float) -eye.z;
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            rays[i * 6] = (float) eye.x;
+            rays[i * 6 + 1] = (float) eye.y;
+            rays[i * 6 + 2] = (float) eye.z;
+            rays[i * 6 + 3] = dx / length;
+            rays[i * 6 + 4] = dy / length;
+            rays[i * 6 + 5] = dz / length;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int bvh() {
+        int sum = 0;
+        for (int i = 0; i < RAYS * 6; i += 6) {
+            sum += (int) kernel.closestHit(rays[i], rays[i + 1], rays[i + 2], rays[i + 3], rays[i + 4], rays[i + 5]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int columns() {
+        int sum = 0;
+        for (int i = 0; i < RAYS * 6; i += 6) {
+            sum += columns.closestHit(rays[i], rays[i + 1], rays[i + 2], rays[i + 3], rays[i + 4], rays[i + 5]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,49 @@
+package Engine;
+
+import com.aparapi.device.JavaDevice;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Полный кадр через RenderContext: разрешение x размер сцены x экземпляры или фигуры x режим исполнения Aparapi
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+    @Param({"320x240", "800x600"})
+    public String resolution;
+
+    @Param({"16", "256", "4096"})
+    public int shapes;
+
+    @Param({"false", "true"})
+    public boolean instanced;
+
+    @Param({"JTP", "SEQ"})
+    public String mode;
+
+    private RenderContext context;
+
+    @Setup
+    public void setup() {
+        String[] size = resolution.split("x");
+        Scene scene = instanced ? BenchmarkScenes.instancedGrid(shapes) : BenchmarkScenes.grid(shapes);
+        context = new RenderContext(scene, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        context.setProgressive(false);
+        context.setDevice(mode.equals("SEQ") ? JavaDevice.SEQUENTIAL : JavaDevice.THREAD_POOL);
+        context.render();  // Загрузка сцены и построение BVH не входят в измерение
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.dispose();
+    }
+
+    @Benchmark
+    public int[] renderFrame() {
+        return context.render();
+    }
+}
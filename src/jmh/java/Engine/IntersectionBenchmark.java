@@ -0,0 +1,75 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import Drawable.Vector3;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность пересечения луча с одной фигурой (intersectSphere, intersectBox)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntersectionBenchmark {
+    private static final int RAYS = 1024;
+
+    private RayTracingKernel kernel;
+    private int sphereRef;
+    private int boxRef;
+    private final float[] rays = new float[RAYS * 6];  // Начало и направление каждого луча
+
+    @Setup
+    public void setup() {
+        Scene scene = new Scene(new Camera(new Vector3(0, 0, -20), Matrix4x4.identity(), 90));
+        Sphere sphere = new Sphere(new Vector3(0, 0, 0), Color.WHITE, 5, 10, 10, new Vector3(0, 0, 0), Material.MATTE);
+        Parallelepiped box = new Parallelepiped(new Vector3(0, 0, 0), Color.WHITE, 8, 8, 8, new Vector3(0, 0, 30), Material.MATTE);
+        scene.addShape(sphere);
+        scene.addShape(box);
+        kernel = BenchmarkScenes.hostKernel(scene, true);
+        sphereRef = scene.getSceneBuffer().getReference(sphere);
+        boxRef = scene.getSceneBuffer().getReference(box);
+
+        // Лучи из точки перед фигурами в квадрат 16x16 вокруг центра: примерно половина промахивается
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < RAYS; i++) {
+            float dx = (float) random.nextDouble(-8, 8);
+            float dy = (float) random.nextDouble(-8, 8);
+            float dz = 20;
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            rays[i * 6] = 0;
+            rays[i * 6 + 1] = 0;
+            rays[i * 6 + 2] = -20;
+            rays[i * 6 + 3] = dx / length;
+            rays[i * 6 + 4] = dy / length;
+            rays[i * 6 + 5] = dz / length;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float sphere() {
+        return intersectAll(sphereRef);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float parallelepiped() {
+        return intersectAll(boxRef);
+    }
+
+    private float intersectAll(int ref) {
+        float sum = 0;
+        for (int i = 0; i < RAYS * 6; i += 6) {
+            sum += kernel.intersectOne(ref, rays[i], rays[i + 1], rays[i + 2], rays[i + 3], rays[i + 4], rays[i + 5]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+package Engine;
+
+import Drawable.Vector3;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Первичные лучи по одному (RayTracingKernel.closestHit) и пакетами PacketTracer.PACKET_SIZE (Vector API).
+// Лучи идут по строкам решётки пикселей, как в TileRenderer
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class PacketBenchmark {
+    private static final int SIDE = 64;
+    private static final int RAYS = SIDE * SIDE;
+
+    @Param({"16", "256", "4096"})
+    public int shapes;
+
+    @Param({"true", "false"})
+    public boolean useBvh;
+
+    private RayTracingKernel kernel;
+    private PacketTracer tracer;
+    private final float[] dirX = new float[RAYS];
+    private final float[] dirY = new float[RAYS];
+    private final float[] dirZ = new float[RAYS];
+    private float originX;
+    private float originY;
+    private float originZ;
+
+    @Setup
+    public void setup() {
+        Scene scene = BenchmarkScenes.grid(shapes);
+        kernel = BenchmarkScenes.hostKernel(scene, useBvh);
+        Camera camera = scene.getCamera();
+        kernel.setCamera(camera.getPosition().toArray(), camera.getForward().toArray(),
+                camera.getUp().toArray(), camera.getRight().toArray(), (float) camera.getFov());
+        tracer = new PacketTracer(kernel);
+
+        Vector3 eye = camera.getPosition();
+        originX = (float) eye.x;
+        originY = (float) eye.y;
+        originZ = (float) eye.z;
+        float half = BenchmarkScenes.columns(shapes) * BenchmarkScenes.SPACING * 0.5f;
+        for (int i = 0; i < RAYS; i++) {
+            float dx = 20 - half + 2 * half * (i % SIDE) / SIDE - originX;
+            float dy = 30 - half + 2 * half * (i / SIDE) / SIDE - originY;
+            float dz = -originZ;
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            dirX[i] = dx / length;
+            dirY[i] = dy / length;
+            dirZ[i] = dz / length;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float scalar() {
+        float sum = 0;
+        for (int i = 0; i < RAYS; i++) {
+            sum += kernel.closestHit(originX, originY, originZ, dirX[i], dirY[i], dirZ[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float packet() {
+        float sum = 0;
+        int size = PacketTracer.PACKET_SIZE;
+        for (int i = 0; i < RAYS; i += size) {
+            System.arraycopy(dirX, i, tracer.dirX, 0, size);
+            System.arraycopy(dirY, i, tracer.dirY, 0, size);
+            System.arraycopy(dirZ, i, tracer.dirZ, 0, size);
+            tracer.trace(size);
+            for (int lane = 0; lane < size; lane++) {
+                sum += tracer.hits[lane] < 0 ? -1 : tracer.closest[lane];
+            }
+        }
+        return sum;
+    }
+}
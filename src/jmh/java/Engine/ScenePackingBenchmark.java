@@ -0,0 +1,54 @@
+package Engine;
+
+import Drawable.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Упаковка фигур в буфер ядра (бывший prepareShapes) и построение BVH
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScenePackingBenchmark {
+    @Param({"16", "256", "4096"})
+    public int shapes;
+
+    private Scene scene;
+    private List<Shape> shapeList;
+
+    @Setup
+    public void setup() {
+        scene = BenchmarkScenes.grid(shapes);
+        shapeList = scene.getShapes();
+        scene.getSceneBuffer().flush();
+    }
+
+    // Полная перепаковка: все слоты помечены грязными
+    @Benchmark
+    public long repackAll() {
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        for (Shape shape : shapeList) {
+            sceneBuffer.update(shape);
+        }
+        sceneBuffer.flush();
+        return sceneBuffer.getVersion();
+    }
+
+    // Типичное изменение кадра: одна фигура
+    @Benchmark
+    public long repackOne() {
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.update(shapeList.get(0));
+        sceneBuffer.flush();
+        return sceneBuffer.getVersion();
+    }
+
+    @Benchmark
+    public BVH buildBvh() {
+        return scene.getSceneBuffer().buildBVH();
+    }
+}
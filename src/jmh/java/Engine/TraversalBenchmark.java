@@ -0,0 +1,98 @@
+package Engine;
+
+import Drawable.Vector3;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость поиска ближайшего пересечения и теневого луча по всей сцене - с BVH и линейным перебором
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraversalBenchmark {
+    private static final int RAYS = 1024;
+
+    @Param({"16", "256", "4096"})
+    public int shapes;
+
+    @Param({"true", "false"})
+    public boolean useBvh;
+
+    private RayTracingKernel kernel;
+    private final float[] cameraRays = new float[RAYS * 6];
+    private final float[] shadowPoints = new float[RAYS * 3];
+    private final float[] coherentPoints = new float[RAYS * 3];
+
+    @Setup
+    public void setup() {
+        Scene scene = BenchmarkScenes.grid(shapes);
+        kernel = BenchmarkScenes.hostKernel(scene, useBvh);
+
+        Vector3 eye = scene.getCamera().getPosition();
+        float half = BenchmarkScenes.columns(shapes) * BenchmarkScenes.SPACING * 0.5f;
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < RAYS; i++) {
+            // Первичные лучи от камеры в случайные точки сетки
+            float dx = 20 + (float) random.nextDouble(-half, half) - (float) eye.x;
+            float dy = 30 + (float) random.nextDouble(-half, half) - (float) eye.y;
+            float dz = (float) -eye.z;
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            cameraRays[i * 6] = (float) eye.x;
+            cameraRays[i * 6 + 1] = (float) eye.y;
+            cameraRays[i * 6 + 2] = (float) eye.z;
+            cameraRays[i * 6 + 3] = dx / length;
+            cameraRays[i * 6 + 4] = dy / length;
+            cameraRays[i * 6 + 5] = dz / length;
+
+            // Теневые лучи из плоскости за сеткой к источнику света проходят сквозь неё
+            shadowPoints[i * 3] = 20 + (float) random.nextDouble(-half, half);
+            shadowPoints[i * 3 + 1] = 30 + (float) random.nextDouble(-half, half);
+            shadowPoints[i * 3 + 2] = BenchmarkScenes.SPACING;
+        }
+
+        // Те же теневые лучи, но из узлов решётки 32x32 по строкам - как от соседних пикселей
+        int side = (int) Math.sqrt(RAYS);
+        for (int i = 0; i < RAYS; i++) {
+            coherentPoints[i * 3] = 20 - half + 2 * half * (i % side) / side;
+            coherentPoints[i * 3 + 1] = 30 - half + 2 * half * (i / side) / side;
+            coherentPoints[i * 3 + 2] = BenchmarkScenes.SPACING;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public float closestHit() {
+        float sum = 0;
+        for (int i = 0; i < RAYS * 6; i += 6) {
+            sum += kernel.closestHit(cameraRays[i], cameraRays[i + 1], cameraRays[i + 2],
+                    cameraRays[i + 3], cameraRays[i + 4], cameraRays[i + 5]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int shadowRay() {
+        return traceShadows(shadowPoints);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int shadowRayCoherent() {
+        return traceShadows(coherentPoints);
+    }
+
+    private int traceShadows(float[] points) {
+        int occluded = 0;
+        for (int i = 0; i < RAYS * 3; i += 3) {
+            if (kernel.shadowRay(points[i], points[i + 1], points[i + 2], 0, 0, -1)) {
+                occluded++;
+            }
+        }
+        return occluded;
+    }
+}
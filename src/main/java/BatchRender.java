@@ -0,0 +1,231 @@
+import Engine.AdaptiveSampler;
+import Engine.ImageFiles;
+import Engine.PixelStatistics;
+import Engine.RenderContext;
+import Engine.RenderMetrics;
+import Engine.Scene;
+import Engine.SceneFile;
+import Engine.TileCoordinator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Пакетный рендер без окна: java BatchRender [--width W] [--height H] [--samples N]
+//     [--seed S] [--backend aparapi|tiles|packets] [--adaptive ошибка] [--output файл.png|файл.ppm] [--stats файл.csv]
+//     [--workers хост:порт,...] [--spawn N] [--scene файл] [--save-scene файл]
+// С --adaptive число сэмплов - средний бюджет на пиксель, а сэмплирование останавливается для пикселей,
+// у которых относительная стандартная ошибка яркости ниже заданной
+// --stats пишет среднюю стоимость пикселей на сэмпл в CSV и тепловые карты рядом с изображением
+// (<имя>.bounces.png, <имя>.tests.png, <имя>.shadow.png в формате --output)
+// --scene загружает сцену из двоичного файла SceneFile вместо демонстрационной,
+// --save-scene записывает сцену рендера в этот формат (вместе с BVH) перед рендером
+// --workers раздаёт плитки запущенным RenderWorker по TCP, --spawn N сначала запускает N воркеров
+// на этой машине (можно вместе с --workers); изображение совпадает с --backend tiles без Vector API
+// --backend packets требует запуска JVM с --add-modules jdk.incubator.vector
+public class BatchRender {
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = 800;
+        int height = 600;
+        int samples = 16;
+        Integer seed = null;
+        RenderContext.Backend backend = null;
+        float adaptiveError = 0;
+        Path output = Path.of("render.png");
+        Path statsOutput = null;
+        List<InetSocketAddress> workers = new ArrayList<>();
+        int spawn = 0;
+        Path sceneFile = null;
+        Path saveScene = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                usage("Не задано значение для " + option);
+            }
+            String value = args[++i];
+            // Числа, бэкенд и пути разбираются здесь: ошибка в аргументах не должна обнаружиться после рендера
+            try {
+                switch (option) {
+                    case "--width" -> width = Integer.parseInt(value);
+                    case "--height" -> height = Integer.parseInt(value);
+                    case "--samples" -> samples = Integer.parseInt(value);
+                    case "--seed" -> seed = Integer.parseInt(value);
+                    case "--backend" -> backend = RenderContext.Backend.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "--adaptive" -> adaptiveError = Float.parseFloat(value);
+                    case "--output" -> {
+                        output = Path.of(value);
+                        if (!ImageFiles.isSupported(output)) {
+                            usage("Формат --output задаётся расширением .png или .ppm: " + value);
+                        }
+                    }
+                    case "--stats" -> statsOutput = Path.of(value);
+                    case "--workers" -> workers.addAll(parseWorkers(value));
+                    case "--spawn" -> spawn = Integer.parseInt(value);
+                    case "--scene" -> sceneFile = Path.of(value);
+                    case "--save-scene" -> saveScene = Path.of(value);
+                    default -> usage("Неизвестный параметр " + option);
+                }
+            } catch (IllegalArgumentException e) {  // В том числе NumberFormatException и InvalidPathException
+                usage("Неверное значение " + option + ": " + value);
+            }
+        }
+        if (width <= 0 || height <= 0 || samples <= 0) {
+            usage("Размеры и число сэмплов должны быть положительными");
+        }
+
+        long loadStart = System.nanoTime();
+        Scene scene = sceneFile != null ? SceneFile.read(sceneFile) : DemoScene.create();
+        if (sceneFile != null) {
+            System.out.printf(Locale.ROOT, "Сцена %s: %d фигур за %.1f мс%n", sceneFile,
+                    scene.getSceneBuffer().getShapeCount(), (System.nanoTime() - loadStart) / 1e6);
+        }
+        if (saveScene != null) {
+            SceneFile.write(scene, saveScene, true);
+            System.out.println("Сцена записана: " + saveScene.toAbsolutePath());
+        }
+        if (!workers.isEmpty() || spawn > 0) {
+            if (adaptiveError > 0 || statsOutput != null || backend != null) {
+                usage("--workers и --spawn не сочетаются с --adaptive, --stats и --backend");
+            }
+            // Зерно по умолчанию - как у RenderContext
+            renderDistributed(scene, width, height, samples, seed != null ? seed : Integer.getInteger("render.seed", 0),
+                    workers, spawn, output);
+            return;
+        }
+        RenderContext context = new RenderContext(scene, width, height);
+        context.setProgressive(true);
+        if (seed != null) {
+            context.setSeed(seed);
+        }
+        if (backend != null) {
+            context.setBackend(backend);
+        }
+        if (adaptiveError > 0) {
+            context.setAdaptiveSampler(new AdaptiveSampler(width, height, samples, Math.min(16, samples),
+                    samples * 16, adaptiveError));
+        }
+        if (statsOutput != null) {
+            context.setStatistics(true);
+        }
+
+        int[] pixels = null;
+        long start = System.nanoTime();
+        int passes = 0;
+        do {
+            pixels = context.render();
+            passes++;
+        } while (adaptiveError > 0 ? context.isConverging() : passes < samples);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        RenderMetrics metrics = context.getMetrics();
+        long rays = metrics.getTotalRays();
+        String executionPath = context.getExecutionPath();
+        PixelStatistics statistics = context.getPixelStatistics();
+        context.dispose();
+
+        ImageFiles.write(pixels, width, height, output);
+        if (statistics != null) {
+            writeStatistics(statistics, output, statsOutput);
+        }
+
+        System.out.printf(Locale.ROOT, "%dx%d, %d spp, бэкенд %s (%s): %.3f с, %d лучей, %.0f лучей/с, %.2f сэмплов на пиксель в секунду%n",
+                width, height, samples, context.getBackend(), executionPath, seconds, rays, rays / seconds, samples / seconds);
+        System.out.printf(Locale.ROOT, "Этапы: сцена %.1f мс, ядро %.1f мс, передача %.1f мс%n",
+                metrics.getTotalPackNanos() / 1e6, metrics.getTotalExecuteNanos() / 1e6, metrics.getTotalTransferNanos() / 1e6);
+        if (adaptiveError > 0) {
+            System.out.printf(Locale.ROOT, "Адаптивно: %d проходов, %d сэмплов (%.1f на пиксель), не сошлось пикселей: %d%n",
+                    passes, context.getAdaptiveSampler().getSamplesSpent(),
+                    (double) context.getAdaptiveSampler().getSamplesSpent() / (width * height),
+                    context.getAdaptiveSampler().getActiveCount());
+        }
+        System.out.println("Записано: " + output.toAbsolutePath());
+    }
+
+    private static void renderDistributed(Scene scene, int width, int height, int samples, int seed,
+                                          List<InetSocketAddress> workers, int spawn, Path output) throws IOException {
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < spawn; i++) {
+                Process process = startWorker();
+                processes.add(process);
+                workers.add(new InetSocketAddress("127.0.0.1", readPort(process)));
+            }
+            long start = System.nanoTime();
+            TileCoordinator coordinator = new TileCoordinator(scene, width, height, samples, seed);
+            int[] pixels = coordinator.render(workers);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long rays = coordinator.getRaysTraced();
+
+            ImageFiles.write(pixels, width, height, output);
+            System.out.printf(Locale.ROOT, "%dx%d, %d spp, воркеров %d: %.3f с, %d лучей, %.0f лучей/с, повторно выдано плиток: %d%n",
+                    width, height, samples, workers.size(), seconds, rays, rays / seconds, coordinator.getReissuedTiles());
+            System.out.println("Записано: " + output.toAbsolutePath());
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    // Воркер в отдельной JVM с тем же classpath; stderr воркера идёт в наш
+    private static Process startWorker() throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "RenderWorker")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    // Первая строка воркера: "... порт N"
+    private static int readPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Воркер завершился, не начав слушать порт");
+        }
+        return Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+    }
+
+    private static List<InetSocketAddress> parseWorkers(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String worker : value.split(",")) {
+            int colon = worker.lastIndexOf(':');
+            if (colon < 0) {
+                usage("Воркер задаётся как хост:порт: " + worker);
+            }
+            addresses.add(new InetSocketAddress(worker.substring(0, colon), Integer.parseInt(worker.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    private static void writeStatistics(PixelStatistics statistics, Path output, Path csv) throws IOException {
+        statistics.writeCsv(csv);
+        String name = output.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = name.substring(0, dot);
+        String extension = name.substring(dot);
+        String[] suffixes = {".bounces", ".tests", ".shadow"};
+        int[] heatmap = new int[statistics.getWidth() * statistics.getHeight()];
+        for (PixelStatistics.Counter counter : PixelStatistics.Counter.values()) {
+            statistics.heatmap(counter, heatmap);
+            ImageFiles.write(heatmap, statistics.getWidth(), statistics.getHeight(),
+                    output.resolveSibling(base + suffixes[counter.ordinal()] + extension));
+            System.out.printf(Locale.ROOT, "%s на сэмпл: среднее %.2f, максимум %.2f%n",
+                    counter.getTitle(), statistics.getMean(counter), statistics.getMax(counter));
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Использование: BatchRender [--width W] [--height H] [--samples N] [--seed S]"
+                + " [--backend aparapi|tiles|packets] [--adaptive ошибка] [--output файл.png|файл.ppm] [--stats файл.csv]"
+                + " [--workers хост:порт,...] [--spawn N] [--scene файл] [--save-scene файл]");
+        System.exit(2);
+    }
+}
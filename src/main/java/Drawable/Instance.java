@@ -0,0 +1,138 @@
+package Drawable;
+
+import java.awt.*;
+
+// Экземпляр прототипа: положение, поворот (градусы, порядок X, Y, Z - как у Parallelepiped), равномерный
+// масштаб и необязательная замена материала и цвета всех фигур прототипа. Геометрия остаётся в прототипе,
+// экземпляр хранит только преобразование. После изменения параметров его нужно передать в Scene.updateInstance
+public class Instance {
+    // Запись для ядра: [0] материал (0 - материалы фигур прототипа), [1..3] цвет RGB (0..1, -1 - цвета фигур),
+    // [4..6] положение, [7..12] границы в мировых координатах - как в заголовке Shape,
+    // [13] корень BVH прототипа (задаёт SceneBuffer), [14..22] переход в координаты прототипа
+    // (строки - оси экземпляра, делённые на масштаб), [23] масштаб
+    public static final int GPU_STRIDE = 24;
+
+    private final Prototype prototype;
+    private Vector3 position;
+    private Vector3 rotation;
+    private double scale;
+    private Material material;  // null - материалы фигур прототипа
+    private Color color;        // null - цвета фигур прототипа
+
+    public Instance(Prototype prototype, Vector3 position, Vector3 rotation, double scale, Color color, Material material) {
+        this.prototype = prototype;
+        this.position = position;
+        this.rotation = rotation;
+        this.color = color;
+        this.material = material;
+        setScale(scale);
+    }
+
+    public Instance(Prototype prototype, Vector3 position) {
+        this(prototype, position, new Vector3(0, 0, 0), 1, null, null);
+    }
+
+    public Prototype getPrototype() {
+        return prototype;
+    }
+
+    public Vector3 getPosition() {
+        return position;
+    }
+
+    public void setPosition(Vector3 position) {
+        this.position = position;
+    }
+
+    public Vector3 getRotation() {
+        return rotation;
+    }
+
+    public void setRotation(Vector3 rotation) {
+        this.rotation = rotation;
+    }
+
+    public void rotate(double angleX, double angleY, double angleZ) {
+        rotation = rotation.add(new Vector3(angleX, angleY, angleZ));
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public void setScale(double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Масштаб экземпляра должен быть положительным: " + scale);
+        }
+        this.scale = scale;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public void setColor(Color color) {
+        this.color = color;
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+
+    // rootNode - корень дерева прототипа в общих массивах BVH прототипов
+    public void writeGPUData(float[] target, int offset, int rootNode) {
+        Vector3[] axes = axes();
+        target[offset] = material != null ? material.getId() : 0;
+        target[offset + 1] = color != null ? color.getRed() / 255f : -1f;
+        target[offset + 2] = color != null ? color.getGreen() / 255f : -1f;
+        target[offset + 3] = color != null ? color.getBlue() / 255f : -1f;
+        target[offset + 4] = (float) position.x;
+        target[offset + 5] = (float) position.y;
+        target[offset + 6] = (float) position.z;
+        writeBounds(target, offset + 7, axes);
+        target[offset + 13] = rootNode;
+        for (int i = 0; i < 3; i++) { // Ось i, делённая на масштаб, - строка i перехода в координаты прототипа
+            target[offset + 14 + i * 3] = (float) (axes[i].x / scale);
+            target[offset + 15 + i * 3] = (float) (axes[i].y / scale);
+            target[offset + 16 + i * 3] = (float) (axes[i].z / scale);
+        }
+        target[offset + 23] = (float) scale;
+    }
+
+    // Ограничивающий параллелепипед в мировых координатах: {minX, minY, minZ, maxX, maxY, maxZ}
+    public void writeBounds(float[] target, int offset) {
+        writeBounds(target, offset, axes());
+    }
+
+    // Границы по восьми углам границ прототипа, переведённым в мировые координаты
+    private void writeBounds(float[] target, int offset, Vector3[] axes) {
+        for (int i = 0; i < 3; i++) {
+            target[offset + i] = Float.MAX_VALUE;
+            target[offset + i + 3] = -Float.MAX_VALUE;
+        }
+        for (int corner = 0; corner < 8; corner++) {
+            double lx = prototype.getBound((corner & 1) != 0 ? 3 : 0) * scale;
+            double ly = prototype.getBound((corner & 2) != 0 ? 4 : 1) * scale;
+            double lz = prototype.getBound((corner & 4) != 0 ? 5 : 2) * scale;
+            for (int i = 0; i < 3; i++) {
+                float value = (float) (position.getComponent(i) + axes[0].getComponent(i) * lx
+                        + axes[1].getComponent(i) * ly + axes[2].getComponent(i) * lz);
+                target[offset + i] = Math.min(target[offset + i], value);
+                target[offset + i + 3] = Math.max(target[offset + i + 3], value);
+            }
+        }
+    }
+
+    // Локальные оси X, Y, Z после поворота на rotation
+    private Vector3[] axes() {
+        return new Vector3[]{
+                new Vector3(1, 0, 0).rotateX(rotation.x).rotateY(rotation.y).rotateZ(rotation.z),
+                new Vector3(0, 1, 0).rotateX(rotation.x).rotateY(rotation.y).rotateZ(rotation.z),
+                new Vector3(0, 0, 1).rotateX(rotation.x).rotateY(rotation.y).rotateZ(rotation.z)
+        };
+    }
+}
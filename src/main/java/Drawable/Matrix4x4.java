@@ -1,116 +1,208 @@
 package Drawable;
 
+// Матрица 4x4 в одном массиве по строкам: элемент (row, column) - values[row * 4 + column].
+// Методы, возвращающие Matrix4x4 или Vector3, создают новый объект; translate, rotate, set* и варианты
+// с dest меняют существующий - для камеры и анимации, где матрица обновляется на каждом кадре
 public class Matrix4x4 {
-    private double[][] values;
+    private final double[] values = new double[16];
+
+    // Единичная матрица
+    public Matrix4x4() {
+        setIdentity();
+    }
 
     public Matrix4x4(double[][] values) {
-        this.values = values;
+        for (int i = 0; i < 4; i++) {
+            System.arraycopy(values[i], 0, this.values, i * 4, 4);
+        }
     }
 
     public static Matrix4x4 identity() {
-        return new Matrix4x4(new double[][]{
-                {1, 0, 0, 0},
-                {0, 1, 0, 0},
-                {0, 0, 1, 0},
-                {0, 0, 0, 1}
-        });
+        return new Matrix4x4();
     }
 
     public static Matrix4x4 rotation(Vector3 axis, double angle) {
+        return new Matrix4x4().setRotation(axis, angle);
+    }
+
+    public static Matrix4x4 translation(Vector3 translation) {
+        return new Matrix4x4().setTranslation(translation);
+    }
+
+    public static Matrix4x4 transformation(Vector3 position, Matrix4x4 rotation) {
+        Matrix4x4 result = new Matrix4x4();
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(rotation.values, i * 4, result.values, i * 4, 3);
+            result.values[i * 4 + 3] = position.getComponent(i);
+        }
+        return result;
+    }
+
+    public double get(int row, int column) {
+        return values[row * 4 + column];
+    }
+
+    public Matrix4x4 set(Matrix4x4 other) {
+        System.arraycopy(other.values, 0, values, 0, 16);
+        return this;
+    }
+
+    public Matrix4x4 setIdentity() {
+        for (int i = 0; i < 16; i++) {
+            values[i] = i % 5 == 0 ? 1 : 0;
+        }
+        return this;
+    }
+
+    public Matrix4x4 setRotation(Vector3 axis, double angle) {
+        setIdentity();
         double rad = Math.toRadians(angle);
         double cos = Math.cos(rad);
         double sin = Math.sin(rad);
         double x = axis.x, y = axis.y, z = axis.z;
+        values[0] = cos + x * x * (1 - cos);
+        values[1] = x * y * (1 - cos) - z * sin;
+        values[2] = x * z * (1 - cos) + y * sin;
+        values[4] = y * x * (1 - cos) + z * sin;
+        values[5] = cos + y * y * (1 - cos);
+        values[6] = y * z * (1 - cos) - x * sin;
+        values[8] = z * x * (1 - cos) - y * sin;
+        values[9] = z * y * (1 - cos) + x * sin;
+        values[10] = cos + z * z * (1 - cos);
+        return this;
+    }
 
-        return new Matrix4x4(new double[][]{
-                {cos + x * x * (1 - cos), x * y * (1 - cos) - z * sin, x * z * (1 - cos) + y * sin, 0},
-                {y * x * (1 - cos) + z * sin, cos + y * y * (1 - cos), y * z * (1 - cos) - x * sin, 0},
-                {z * x * (1 - cos) - y * sin, z * y * (1 - cos) + x * sin, cos + z * z * (1 - cos), 0},
-                {0, 0, 0, 1}
-        });
+    public Matrix4x4 setTranslation(Vector3 translation) {
+        setIdentity();
+        values[3] = translation.x;
+        values[7] = translation.y;
+        values[11] = translation.z;
+        return this;
     }
 
-    public static Matrix4x4 translation(Vector3 translation) {
-        return new Matrix4x4(new double[][]{
-                {1, 0, 0, translation.x},
-                {0, 1, 0, translation.y},
-                {0, 0, 1, translation.z},
-                {0, 0, 0, 1}
-        });
+    public Matrix4x4 applyTranslation(Vector3 translation) {
+        return copy().translate(translation);
     }
 
-    public static Matrix4x4 transformation(Vector3 position, Matrix4x4 rotation) {
-        double[][] values = rotation.values;
-        return new Matrix4x4(new double[][]{
-                {values[0][0], values[0][1], values[0][2], position.x},
-                {values[1][0], values[1][1], values[1][2], position.y},
-                {values[2][0], values[2][1], values[2][2], position.z},
-                {0, 0, 0, 1}
-        });
+    public Matrix4x4 applyRotation(Vector3 axis, double angle) {
+        return copy().rotate(axis, angle);
     }
 
-    public Matrix4x4 applyTranslation(Vector3 translation) {
-        Matrix4x4 translationMatrix = Matrix4x4.translation(translation);
-        return this.multiply(translationMatrix);
+    // this = this * translation(translation) без промежуточных матриц; результат совпадает с applyTranslation
+    public Matrix4x4 translate(Vector3 translation) {
+        for (int i = 0; i < 16; i += 4) {
+            values[i + 3] = values[i] * translation.x + values[i + 1] * translation.y
+                    + values[i + 2] * translation.z + values[i + 3];
+        }
+        return this;
     }
 
-    public Matrix4x4 applyRotation(Vector3 axis, double angle) {
-        Matrix4x4 rotationMatrix = Matrix4x4.rotation(axis, angle);
-        return this.multiply(rotationMatrix);
+    // this = this * rotation(axis, angle): меняются только первые три столбца
+    public Matrix4x4 rotate(Vector3 axis, double angle) {
+        double rad = Math.toRadians(angle);
+        double cos = Math.cos(rad);
+        double sin = Math.sin(rad);
+        double x = axis.x, y = axis.y, z = axis.z;
+        double r00 = cos + x * x * (1 - cos), r01 = x * y * (1 - cos) - z * sin, r02 = x * z * (1 - cos) + y * sin;
+        double r10 = y * x * (1 - cos) + z * sin, r11 = cos + y * y * (1 - cos), r12 = y * z * (1 - cos) - x * sin;
+        double r20 = z * x * (1 - cos) - y * sin, r21 = z * y * (1 - cos) + x * sin, r22 = cos + z * z * (1 - cos);
+        for (int i = 0; i < 16; i += 4) {
+            double a = values[i], b = values[i + 1], c = values[i + 2];
+            values[i] = a * r00 + b * r10 + c * r20;
+            values[i + 1] = a * r01 + b * r11 + c * r21;
+            values[i + 2] = a * r02 + b * r12 + c * r22;
+        }
+        return this;
+    }
+
+    public Matrix4x4 copy() {
+        return new Matrix4x4().set(this);
     }
 
     public Vector3 extractPosition() {
-        return new Vector3(values[0][3], values[1][3], values[2][3]);
+        return extractPosition(new Vector3());
+    }
+
+    public Vector3 extractPosition(Vector3 dest) {
+        return dest.set(values[3], values[7], values[11]);
     }
 
     public Matrix4x4 extractOrientation() {
-        double[][] orientationValues = {
-                {values[0][0], values[0][1], values[0][2], 0},
-                {values[1][0], values[1][1], values[1][2], 0},
-                {values[2][0], values[2][1], values[2][2], 0},
-                {0, 0, 0, 1}
-        };
-        return new Matrix4x4(orientationValues);
+        Matrix4x4 orientation = copy();
+        orientation.values[3] = 0;
+        orientation.values[7] = 0;
+        orientation.values[11] = 0;
+        orientation.values[12] = 0;
+        orientation.values[13] = 0;
+        orientation.values[14] = 0;
+        orientation.values[15] = 1;
+        return orientation;
     }
 
     public Vector3 extractForward() {
-        return new Vector3(values[0][2], values[1][2], values[2][2]).normalize();
+        return extractForward(new Vector3());
+    }
+
+    public Vector3 extractForward(Vector3 dest) {
+        return dest.set(values[2], values[6], values[10]).normalize(dest);
     }
 
     public Vector3 extractUp() {
-        return new Vector3(values[0][1], values[1][1], values[2][1]).normalize();
+        return extractUp(new Vector3());
+    }
+
+    public Vector3 extractUp(Vector3 dest) {
+        return dest.set(values[1], values[5], values[9]).normalize(dest);
     }
 
     public Vector3 extractRight() {
-        return new Vector3(values[0][0], values[1][0], values[2][0]).normalize();
+        return extractRight(new Vector3());
+    }
+
+    public Vector3 extractRight(Vector3 dest) {
+        return dest.set(values[0], values[4], values[8]).normalize(dest);
     }
 
     public Matrix4x4 multiply(Matrix4x4 other) {
-        double[][] result = new double[4][4];
-        for (int i = 0; i < 4; i++) {
+        return multiply(other, new Matrix4x4());
+    }
+
+    // dest = this * other; строки this читаются до записи, поэтому dest может совпадать с this.
+    // Если dest - это other, правый множитель сначала копируется
+    public Matrix4x4 multiply(Matrix4x4 other, Matrix4x4 dest) {
+        if (dest == other) {
+            return multiply(other.copy(), dest);
+        }
+        double[] m = other.values;
+        for (int i = 0; i < 16; i += 4) {
+            double a = values[i], b = values[i + 1], c = values[i + 2], d = values[i + 3];
             for (int j = 0; j < 4; j++) {
-                for (int k = 0; k < 4; k++) {
-                    result[i][j] += this.values[i][k] * other.values[k][j];
-                }
+                dest.values[i + j] = a * m[j] + b * m[4 + j] + c * m[8 + j] + d * m[12 + j];
             }
         }
-        return new Matrix4x4(result);
+        return dest;
     }
 
     public Vector3 transform(Vector3 v) {
-        double x = v.x * values[0][0] + v.y * values[0][1] + v.z * values[0][2] + values[0][3];
-        double y = v.x * values[1][0] + v.y * values[1][1] + v.z * values[1][2] + values[1][3];
-        double z = v.x * values[2][0] + v.y * values[2][1] + v.z * values[2][2] + values[2][3];
-        return new Vector3(x, y, z);
+        return transform(v, new Vector3());
+    }
+
+    // dest может совпадать с v
+    public Vector3 transform(Vector3 v, Vector3 dest) {
+        double x = v.x * values[0] + v.y * values[1] + v.z * values[2] + values[3];
+        double y = v.x * values[4] + v.y * values[5] + v.z * values[6] + values[7];
+        double z = v.x * values[8] + v.y * values[9] + v.z * values[10] + values[11];
+        return dest.set(x, y, z);
     }
 
     public float[] toArray() {
-        float[] array = new float[16];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                array[i * 4 + j] = (float) values[i][j];
-            }
+        return toArray(new float[16]);
+    }
+
+    public float[] toArray(float[] dest) {
+        for (int i = 0; i < 16; i++) {
+            dest[i] = (float) values[i];
         }
-        return array;
+        return dest;
     }
 }
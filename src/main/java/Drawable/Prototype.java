@@ -0,0 +1,44 @@
+package Drawable;
+
+import java.util.List;
+
+// Геометрия, общая для многих экземпляров (Instance): фигуры в собственных координатах прототипа.
+// Состав не меняется после создания - SceneBuffer упаковывает записи фигур и BVH прототипа один раз,
+// сколько бы экземпляров на него ни ссылалось
+public class Prototype {
+    private final List<Shape> shapes;
+    private final float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+            -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+
+    public Prototype(List<Shape> shapes) {
+        if (shapes.isEmpty()) {
+            throw new IllegalArgumentException("Прототип без фигур");
+        }
+        this.shapes = List.copyOf(shapes);
+        float[] shapeBounds = new float[6];
+        for (Shape shape : this.shapes) {
+            shape.writeBounds(shapeBounds, 0);
+            for (int i = 0; i < 3; i++) {
+                bounds[i] = Math.min(bounds[i], shapeBounds[i]);
+                bounds[i + 3] = Math.max(bounds[i + 3], shapeBounds[i + 3]);
+            }
+        }
+    }
+
+    public Prototype(Shape... shapes) {
+        this(List.of(shapes));
+    }
+
+    public List<Shape> getShapes() {
+        return shapes;
+    }
+
+    // Границы в координатах прототипа: {minX, minY, minZ, maxX, maxY, maxZ}
+    public float[] getBounds() {
+        return bounds.clone();
+    }
+
+    float getBound(int index) {
+        return bounds[index];
+    }
+}
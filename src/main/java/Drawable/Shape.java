@@ -3,6 +3,15 @@ package Drawable;
 import java.awt.*;
 
 public abstract class Shape {
+    // -Drender.debug=true включает отладочный вывод при упаковке сцены
+    protected static final boolean DEBUG = Boolean.getBoolean("render.debug");
+
+    // Типы записей для ядра: фигуры каждого типа лежат в своём массиве с фиксированным шагом
+    public static final int GPU_TYPE_BOX = 1;
+    public static final int GPU_TYPE_SPHERE = 2;
+    // Общий заголовок записи: [0] материал, [1..3] цвет RGB (0..1), [4..6] центр, [7..12] границы (min, max)
+    public static final int GPU_HEADER_SIZE = 13;
+
     protected Vector3 position;
     protected Color color;
     protected Vector3 rotation;
@@ -11,12 +20,12 @@ public abstract class Shape {
     public Shape(Vector3 position, Color color, Vector3 rotation, Material material) {
         this.position = position;
         this.color = color;
-        this.rotation = rotation;
+        this.rotation = new Vector3(rotation);  // Своя копия: rotate меняет её на месте
         this.material = material;
     }
 
     public void rotate(double angleX, double angleY, double angleZ) {
-        rotation = rotation.add(new Vector3(angleX, angleY, angleZ));
+        rotation.set(rotation.x + angleX, rotation.y + angleY, rotation.z + angleZ);
     }
 
     public Color getColor() {
@@ -25,6 +34,38 @@ public abstract class Shape {
 
     public abstract double intersect(Vector3 origin, Vector3 direction);
 
-    public abstract float[] toGPUData();
+    public float[] toGPUData() {
+        float[] data = new float[getGPUDataSize()];
+        writeGPUData(data, 0);
+        return data;
+    }
+
+    public abstract int getGPUType();
+
+    // Фиксированный шаг записи для типа фигуры
+    public abstract int getGPUDataSize();
+
+    // Записывает запись фигуры для ядра в target начиная с offset без промежуточных массивов
+    public abstract void writeGPUData(float[] target, int offset);
+
+    protected void writeGPUHeader(float[] target, int offset) {
+        target[offset] = material.getId();
+        target[offset + 1] = color.getRed() / 255f; // R
+        target[offset + 2] = color.getGreen() / 255f; // G
+        target[offset + 3] = color.getBlue() / 255f; // B
+        target[offset + 4] = (float) position.x; // Центр
+        target[offset + 5] = (float) position.y;
+        target[offset + 6] = (float) position.z;
+        writeBounds(target, offset + 7);
+    }
+
+    // Ограничивающий параллелепипед: {minX, minY, minZ, maxX, maxY, maxZ}
+    public float[] getBounds() {
+        float[] bounds = new float[6];
+        writeBounds(bounds, 0);
+        return bounds;
+    }
+
+    public abstract void writeBounds(float[] target, int offset);
 
 }
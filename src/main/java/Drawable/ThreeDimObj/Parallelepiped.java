@@ -5,11 +5,21 @@ import Drawable.Shape;
 import Drawable.Vector3;
 
 import java.awt.*;
-import java.util.Arrays;
 
 public class Parallelepiped extends Shape {
+    // Запись для ядра: заголовок Shape, [13..15] половины размеров,
+    // [16..24] обратная ориентация (строки - оси параллелепипеда в мировых координатах), [25..27] выравнивание
+    public static final int GPU_STRIDE = 28;
+
+    // Знаки половин размеров для восьми вершин
+    private static final double[][] SIGNS = {{-1, -1, -1}, {1, -1, -1}, {1, 1, -1}, {-1, 1, -1},
+            {-1, -1, 1}, {1, -1, 1}, {1, 1, 1}, {-1, 1, 1}};
+
     public double width, height, depth;
-    private Vector3[] corners;
+    // Локальные оси X, Y, Z после поворота на rotation (градусы, порядок X, Y, Z);
+    // оси и вершины создаются один раз и пересчитываются на месте при повороте
+    private final Vector3[] axes = {new Vector3(), new Vector3(), new Vector3()};
+    private final Vector3[] corners = new Vector3[SIGNS.length];
 
     public Parallelepiped(Vector3 position, Color color,
                           double width, double height, double depth, Vector3 rotation, Material material) {
@@ -21,17 +31,19 @@ public class Parallelepiped extends Shape {
     }
 
     private void initializeCorners() {
-        // Задаем вершины относительно центра позиции
-        corners = new Vector3[]{
-                new Vector3(position.x - width / 2, position.y - height / 2, position.z - depth / 2),
-                new Vector3(position.x + width / 2, position.y - height / 2, position.z - depth / 2),
-                new Vector3(position.x + width / 2, position.y + height / 2, position.z - depth / 2),
-                new Vector3(position.x - width / 2, position.y + height / 2, position.z - depth / 2),
-                new Vector3(position.x - width / 2, position.y - height / 2, position.z + depth / 2),
-                new Vector3(position.x + width / 2, position.y - height / 2, position.z + depth / 2),
-                new Vector3(position.x + width / 2, position.y + height / 2, position.z + depth / 2),
-                new Vector3(position.x - width / 2, position.y + height / 2, position.z + depth / 2)
-        };
+        axes[0].set(1, 0, 0);
+        axes[1].set(0, 1, 0);
+        axes[2].set(0, 0, 1);
+        for (Vector3 axis : axes) {
+            axis.rotateX(rotation.x, axis).rotateY(rotation.y, axis).rotateZ(rotation.z, axis);
+        }
+        // Задаем вершины относительно центра позиции с учётом поворота
+        for (int i = 0; i < SIGNS.length; i++) {
+            if (corners[i] == null) corners[i] = new Vector3();
+            position.addScaled(axes[0], SIGNS[i][0] * width / 2, corners[i])
+                    .addScaled(axes[1], SIGNS[i][1] * height / 2, corners[i])
+                    .addScaled(axes[2], SIGNS[i][2] * depth / 2, corners[i]);
+        }
     }
 
 
@@ -65,29 +77,49 @@ public class Parallelepiped extends Shape {
 
     @Override
     public void rotate(double angleX, double angleY, double angleZ) {
-        for (int i = 0; i < corners.length; i++) {
-            corners[i] = corners[i].rotateX(angleX).rotateY(angleY).rotateZ(angleZ);
-        }
+        // Поворот вокруг собственного центра: вершины и оси пересчитываются из нового rotation
+        super.rotate(angleX, angleY, angleZ);
+        initializeCorners();
     }
 
-    public float[] toGPUData() {
-        float[] cornersData = new float[24]; // 8 вершин по 3 координаты (x, y, z)
-        for (int i = 0; i < corners.length; i++) {
-            float[] vertex = corners[i].toArray();
-            System.arraycopy(vertex, 0, cornersData, i * 3, 3);
+    @Override
+    public void writeBounds(float[] target, int offset) {
+        for (int i = 0; i < 3; i++) {
+            target[offset + i] = Float.MAX_VALUE;
+            target[offset + i + 3] = -Float.MAX_VALUE;
+        }
+        for (Vector3 corner : corners) {
+            for (int i = 0; i < 3; i++) {
+                float value = (float) corner.getComponent(i);
+                target[offset + i] = Math.min(target[offset + i], value);
+                target[offset + i + 3] = Math.max(target[offset + i + 3], value);
+            }
         }
+    }
 
-        float[] data = new float[32];
-        data[0] = 1f; // Тип объекта (6 - параллелепипед)
-        data[1] = material.getId();
-        data[2] = (float) position.x;
-        data[3] = (float) position.y;
-        data[4] = (float) position.z;
-        System.arraycopy(cornersData, 0, data, 5, cornersData.length);
-        data[29] = color.getRed() / 255f; // R
-        data[30] = color.getGreen() / 255f; // G
-        data[31] = color.getBlue() / 255f; // B
-
-        return data;
+    @Override
+    public int getGPUType() {
+        return GPU_TYPE_BOX;
+    }
+
+    @Override
+    public int getGPUDataSize() {
+        return GPU_STRIDE;
+    }
+
+    @Override
+    public void writeGPUData(float[] target, int offset) {
+        writeGPUHeader(target, offset);
+        target[offset + 13] = (float) (width / 2);
+        target[offset + 14] = (float) (height / 2);
+        target[offset + 15] = (float) (depth / 2);
+        for (int i = 0; i < 3; i++) { // Ось i - строка i матрицы перехода в локальные координаты
+            target[offset + 16 + i * 3] = (float) axes[i].x;
+            target[offset + 17 + i * 3] = (float) axes[i].y;
+            target[offset + 18 + i * 3] = (float) axes[i].z;
+        }
+        target[offset + 25] = 0f;
+        target[offset + 26] = 0f;
+        target[offset + 27] = 0f;
     }
 }
@@ -7,6 +7,9 @@ import Drawable.Vector3;
 import java.awt.*;
 
 public class Sphere extends Shape {
+    // Запись для ядра: заголовок Shape, [13] радиус, [14] квадрат радиуса, [15] выравнивание
+    public static final int GPU_STRIDE = 16;
+
     private int latitudeBands;
     private int longitudeBands;
     private double radius;
@@ -63,30 +66,44 @@ public class Sphere extends Shape {
 
     @Override
     public void rotate(double angleX, double angleY, double angleZ) {
-        for (int i = 0; i < vertices.length; i++) {
-            vertices[i] = vertices[i].rotateX(angleX).rotateY(angleY).rotateZ(angleZ);
+        // Синусы и косинусы одни на все вершины, вершины поворачиваются на месте
+        double cosX = Math.cos(Math.toRadians(angleX)), sinX = Math.sin(Math.toRadians(angleX));
+        double cosY = Math.cos(Math.toRadians(angleY)), sinY = Math.sin(Math.toRadians(angleY));
+        double cosZ = Math.cos(Math.toRadians(angleZ)), sinZ = Math.sin(Math.toRadians(angleZ));
+        for (Vector3 vertex : vertices) {
+            vertex.rotateX(cosX, sinX, vertex).rotateY(cosY, sinY, vertex).rotateZ(cosZ, sinZ, vertex);
         }
     }
 
     @Override
-    public float[] toGPUData() {
-        float[] positionArray = position.toArray();
-        if (positionArray.length != 3) {
-            System.out.println("Ошибка: данные позиции сферы некорректны.");
+    public void writeBounds(float[] target, int offset) {
+        target[offset] = (float) (position.x - radius);
+        target[offset + 1] = (float) (position.y - radius);
+        target[offset + 2] = (float) (position.z - radius);
+        target[offset + 3] = (float) (position.x + radius);
+        target[offset + 4] = (float) (position.y + radius);
+        target[offset + 5] = (float) (position.z + radius);
+    }
+
+    @Override
+    public int getGPUType() {
+        return GPU_TYPE_SPHERE;
+    }
+
+    @Override
+    public int getGPUDataSize() {
+        return GPU_STRIDE;
+    }
+
+    @Override
+    public void writeGPUData(float[] target, int offset) {
+        if (DEBUG) {
+            System.out.println(color.toString());
         }
 
-        System.out.println(color.toString());
-
-        return new float[]{
-                2f, // Тип объекта (1 - сфера)
-                material.getId(),
-                positionArray[0], positionArray[1], positionArray[2], // Центр
-                (float) radius, // Радиус
-                (float) latitudeBands,
-                (float) longitudeBands,
-                color.getRed() / 255f, // R
-                color.getGreen() / 255f, // G
-                color.getBlue() / 255f
-        };
+        writeGPUHeader(target, offset);
+        target[offset + 13] = (float) radius; // Радиус
+        target[offset + 14] = (float) (radius * radius);
+        target[offset + 15] = 0f;
     }
 }
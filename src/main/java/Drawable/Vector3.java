@@ -1,5 +1,7 @@
 package Drawable;
 
+// Методы без dest возвращают новый вектор. Варианты с dest записывают результат в dest и возвращают его,
+// ничего не выделяя; dest может быть самим this или аргументом - для обновления вершин и осей на месте
 public class Vector3 {
     public double x, y, z;
 
@@ -9,26 +11,73 @@ public class Vector3 {
         this.z = z;
     }
 
+    public Vector3() {
+        this(0, 0, 0);
+    }
+
+    public Vector3(Vector3 other) {
+        this(other.x, other.y, other.z);
+    }
+
+    public Vector3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vector3 set(Vector3 other) {
+        return set(other.x, other.y, other.z);
+    }
+
     public float[] toArray() {
-        return new float[]{(float) x, (float) y, (float) z};
+        return toArray(new float[3]);
+    }
+
+    public float[] toArray(float[] dest) {
+        dest[0] = (float) x;
+        dest[1] = (float) y;
+        dest[2] = (float) z;
+        return dest;
     }
 
     public Vector3 add(Vector3 other) {
         return new Vector3(x + other.x, y + other.y, z + other.z);
     }
 
+    public Vector3 add(Vector3 other, Vector3 dest) {
+        return dest.set(x + other.x, y + other.y, z + other.z);
+    }
+
+    // dest = this + other * scalar
+    public Vector3 addScaled(Vector3 other, double scalar, Vector3 dest) {
+        return dest.set(x + other.x * scalar, y + other.y * scalar, z + other.z * scalar);
+    }
+
     public Vector3 subtract(Vector3 other) {
         return new Vector3(x - other.x, y - other.y, z - other.z);
     }
 
+    public Vector3 subtract(Vector3 other, Vector3 dest) {
+        return dest.set(x - other.x, y - other.y, z - other.z);
+    }
+
     public Vector3 multiply(double scalar) {
         return new Vector3(x * scalar, y * scalar, z * scalar);
     }
 
+    public Vector3 multiply(double scalar, Vector3 dest) {
+        return dest.set(x * scalar, y * scalar, z * scalar);
+    }
+
     public Vector3 normalize() {
+        return normalize(new Vector3());
+    }
+
+    public Vector3 normalize(Vector3 dest) {
         double length = magnitude();
-        if (length == 0) return new Vector3(0, 0, 0);
-        return new Vector3(x / length, y / length, z / length);
+        if (length == 0) return dest.set(0, 0, 0);
+        return dest.set(x / length, y / length, z / length);
     }
 
     public double magnitude() {
@@ -40,7 +89,11 @@ public class Vector3 {
     }
 
     public Vector3 cross(Vector3 other) {
-        return new Vector3(
+        return cross(other, new Vector3());
+    }
+
+    public Vector3 cross(Vector3 other, Vector3 dest) {
+        return dest.set(
                 y * other.z - z * other.y,
                 z * other.x - x * other.z,
                 x * other.y - y * other.x
@@ -48,24 +101,43 @@ public class Vector3 {
     }
 
     public Vector3 rotateX(double angle) {
+        return rotateX(angle, new Vector3());
+    }
+
+    public Vector3 rotateX(double angle, Vector3 dest) {
         double rad = Math.toRadians(angle);
-        double newY = y * Math.cos(rad) - z * Math.sin(rad);
-        double newZ = y * Math.sin(rad) + z * Math.cos(rad);
-        return new Vector3(x, newY, newZ);
+        return rotateX(Math.cos(rad), Math.sin(rad), dest);
+    }
+
+    // Поворот с заранее посчитанными cos и sin угла - для многих вершин на один и тот же угол
+    public Vector3 rotateX(double cos, double sin, Vector3 dest) {
+        return dest.set(x, y * cos - z * sin, y * sin + z * cos);
     }
 
     public Vector3 rotateY(double angle) {
+        return rotateY(angle, new Vector3());
+    }
+
+    public Vector3 rotateY(double angle, Vector3 dest) {
         double rad = Math.toRadians(angle);
-        double newX = x * Math.cos(rad) + z * Math.sin(rad);
-        double newZ = -x * Math.sin(rad) + z * Math.cos(rad);
-        return new Vector3(newX, y, newZ);
+        return rotateY(Math.cos(rad), Math.sin(rad), dest);
+    }
+
+    public Vector3 rotateY(double cos, double sin, Vector3 dest) {
+        return dest.set(x * cos + z * sin, y, -x * sin + z * cos);
     }
 
     public Vector3 rotateZ(double angle) {
+        return rotateZ(angle, new Vector3());
+    }
+
+    public Vector3 rotateZ(double angle, Vector3 dest) {
         double rad = Math.toRadians(angle);
-        double newX = x * Math.cos(rad) - y * Math.sin(rad);
-        double newY = x * Math.sin(rad) + y * Math.cos(rad);
-        return new Vector3(newX, newY, z);
+        return rotateZ(Math.cos(rad), Math.sin(rad), dest);
+    }
+
+    public Vector3 rotateZ(double cos, double sin, Vector3 dest) {
+        return dest.set(x * cos - y * sin, x * sin + y * cos, z);
     }
 
     public Vector3 transform(Vector3 cameraPosition, Vector3 cameraForward, Vector3 cameraUp, Vector3 cameraRight) {
@@ -0,0 +1,122 @@
+package Engine;
+
+// Адаптивная выборка: каждый проход даёт по сэмплу только пикселям, которым они ещё нужны.
+// Ядро после сэмпла обновляет среднее и дисперсию яркости пикселя и флаг pixelActive,
+// здесь по флагам сжимается список активных пикселей для следующего прохода.
+// Общий бюджет - spp * число пикселей; он проверяется перед каждым проходом.
+public class AdaptiveSampler {
+    // Дисперсия определена начиная с двух сэмплов; меньший минимум поднимается до него
+    static final int MIN_SAMPLES = 2;
+
+    private final int width;
+    private final int height;
+    private final int pixelCount;
+    private final int budgetSpp;
+    private final int minSamples;
+    private final int maxSamples;
+    private final float errorThreshold;
+    private int[] passPixels;   // Пиксели последнего прохода
+    private int passCount;
+    private int[] nextPixels;   // Пиксели, которым нужны ещё сэмплы
+    private int nextCount;
+    private long samplesSpent;
+
+    public AdaptiveSampler(int width, int height, int budgetSpp, int minSamples, int maxSamples, float errorThreshold) {
+        this.width = width;
+        this.height = height;
+        this.pixelCount = width * height;
+        this.budgetSpp = budgetSpp;
+        this.minSamples = Math.max(MIN_SAMPLES, minSamples);
+        this.maxSamples = maxSamples;
+        this.errorThreshold = errorThreshold;
+        this.passPixels = new int[pixelCount];
+        this.nextPixels = new int[pixelCount];
+        reset();
+    }
+
+    // Новое накопление: активны все пиксели, бюджет полный
+    public void reset() {
+        for (int i = 0; i < pixelCount; i++) {
+            nextPixels[i] = i;
+        }
+        nextCount = pixelCount;
+        passCount = 0;
+        samplesSpent = 0;
+    }
+
+    public void configure(RayTracingKernel kernel) {
+        kernel.setAdaptive(true, minSamples, maxSamples, errorThreshold);
+    }
+
+    // Передаёт ядру список пикселей прохода; возвращает его длину
+    public int beginPass(RayTracingKernel kernel) {
+        int[] swap = passPixels;
+        passPixels = nextPixels;
+        nextPixels = swap;
+        passCount = nextCount;
+        kernel.setActivePixels(passPixels, passCount);
+        samplesSpent += passCount;
+        return passCount;
+    }
+
+    // pixelActive - флаги ядра после прохода. Оценка дисперсии по нескольким сэмплам занижена
+    // для редких ярких путей, поэтому сошедшийся пиксель рядом с шумным соседом продолжает сэмплироваться
+    // (флаг 2 - активен по соседству; сам он не продлевает соседей)
+    public void endPass(int[] pixelActive) {
+        int count = 0;
+        for (int i = 0; i < passCount; i++) {
+            int id = passPixels[i];
+            int flag = pixelActive[id];
+            if (flag == 0 && hasNoisyNeighbour(pixelActive, id)) {
+                pixelActive[id] = 2;
+                flag = 2;
+            }
+            if (flag > 0) {
+                nextPixels[count++] = id;
+            }
+        }
+        nextCount = count;
+    }
+
+    private boolean hasNoisyNeighbour(int[] pixelActive, int id) {
+        int x = id % width;
+        int y = id / width;
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                if (pixelActive[ny * width + nx] == 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Переносит пиксели последнего прохода из from в to: остальные в обоих буферах уже совпадают
+    public void copyPass(int[] from, int[] to) {
+        for (int i = 0; i < passCount; i++) {
+            int id = passPixels[i];
+            to[id] = from[id];
+        }
+    }
+
+    public boolean isDone() {
+        return nextCount == 0 || samplesSpent >= (long) budgetSpp * pixelCount;
+    }
+
+    // Лучи последнего прохода: счётчики остальных пикселей остались от прошлых проходов
+    public long sumRays(int[] rayCounts) {
+        long total = 0;
+        for (int i = 0; i < passCount; i++) {
+            total += rayCounts[passPixels[i]];
+        }
+        return total;
+    }
+
+    public int getActiveCount() {
+        return nextCount;
+    }
+
+    public long getSamplesSpent() {
+        return samplesSpent;
+    }
+}
@@ -0,0 +1,288 @@
+package Engine;
+
+import Drawable.Shape;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class BVH {
+    public static final int STACK_SIZE = 64;   // Размер стека обхода в ядре
+    private static final int MAX_DEPTH = STACK_SIZE - 2;
+    private static final int BIN_COUNT = 12;
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int PARALLEL_THRESHOLD = 2048; // Меньшие поддеревья строятся в текущем потоке
+    private static final float TRAVERSAL_COST = 1.0f;
+    private static final float INTERSECTION_COST = 1.0f;
+
+    private final float[] nodeBounds;  // 6 значений на узел: min(x, y, z), max(x, y, z)
+    private final int[] nodeLinks;     // 2 значения на узел: левый потомок или первый примитив, число примитивов
+    private final int[] primitives;    // Ссылки на примитивы (смещения фигур в массиве shapes)
+    private final int nodeCount;
+
+    // Из готовых массивов: дерево, полученное по сети или из файла сцены
+    BVH(float[] nodeBounds, int[] nodeLinks, int[] primitives, int nodeCount) {
+        this.nodeBounds = nodeBounds;
+        this.nodeLinks = nodeLinks;
+        this.primitives = primitives;
+        this.nodeCount = nodeCount;
+    }
+
+    // Фигуры со смещением -1 не попали в массив shapes и пропускаются
+    public static BVH build(List<Shape> shapes, int[] shapeOffsets) {
+        float[] bounds = new float[shapes.size() * 6];
+        int[] refs = new int[shapes.size()];
+        int count = 0;
+        for (int i = 0; i < shapes.size(); i++) {
+            if (shapeOffsets[i] < 0) continue;
+            shapes.get(i).writeBounds(bounds, count * 6);
+            refs[count++] = shapeOffsets[i];
+        }
+        return build(bounds, refs, count);
+    }
+
+    // bounds - 6 значений на примитив, refs - значение, которое попадёт в массив примитивов листа
+    public static BVH build(float[] bounds, int[] refs, int count) {
+        if (count == 0) {
+            // Пустой корень с вывернутыми границами: ни один луч в него не попадёт
+            float[] emptyBounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                    -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            return new BVH(emptyBounds, new int[]{0, 0}, new int[1], 1);
+        }
+
+        int[] order = new int[count];
+        float[] centroids = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[i * 3 + axis] = (bounds[i * 6 + axis] + bounds[i * 6 + axis + 3]) * 0.5f;
+            }
+        }
+
+        BuildTask root = new BuildTask(bounds, centroids, order, 0, count, 0);
+        if (count > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(root);
+        } else {
+            root.compute();
+        }
+
+        int nodeCount = root.node.countNodes();
+        float[] nodeBounds = new float[nodeCount * 6];
+        int[] nodeLinks = new int[nodeCount * 2];
+        int[] primitives = new int[count];
+        for (int i = 0; i < count; i++) {
+            primitives[i] = refs[order[i]];
+        }
+
+        // Потомки каждого внутреннего узла лежат рядом: правый = левый + 1
+        int[] nextFree = {1};
+        flatten(root.node, 0, nodeBounds, nodeLinks, nextFree);
+        return new BVH(nodeBounds, nodeLinks, primitives, nodeCount);
+    }
+
+    private static void flatten(BuildNode node, int index, float[] nodeBounds, int[] nodeLinks, int[] nextFree) {
+        System.arraycopy(node.bounds, 0, nodeBounds, index * 6, 6);
+        if (node.left == null) {
+            nodeLinks[index * 2] = node.start;
+            nodeLinks[index * 2 + 1] = node.count;
+            return;
+        }
+        int left = nextFree[0];
+        nextFree[0] += 2;
+        nodeLinks[index * 2] = left;
+        nodeLinks[index * 2 + 1] = 0;
+        flatten(node.left, left, nodeBounds, nodeLinks, nextFree);
+        flatten(node.right, left + 1, nodeBounds, nodeLinks, nextFree);
+    }
+
+    public float[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    public int[] getNodeLinks() {
+        return nodeLinks;
+    }
+
+    public int[] getPrimitives() {
+        return primitives;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private static class BuildNode {
+        final float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        int start;
+        int count;
+        BuildNode left;
+        BuildNode right;
+
+        int countNodes() {
+            return left == null ? 1 : 1 + left.countNodes() + right.countNodes();
+        }
+    }
+
+    private static class BuildTask extends RecursiveAction {
+        private final float[] bounds;
+        private final float[] centroids;
+        private final int[] order;
+        private final int start;
+        private final int end;
+        private final int depth;
+        final BuildNode node = new BuildNode();
+
+        BuildTask(float[] bounds, float[] centroids, int[] order, int start, int end, int depth) {
+            this.bounds = bounds;
+            this.centroids = centroids;
+            this.order = order;
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            float[] centroidBounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                    -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (int i = start; i < end; i++) {
+                int primitive = order[i];
+                for (int axis = 0; axis < 3; axis++) {
+                    node.bounds[axis] = Math.min(node.bounds[axis], bounds[primitive * 6 + axis]);
+                    node.bounds[axis + 3] = Math.max(node.bounds[axis + 3], bounds[primitive * 6 + axis + 3]);
+                    centroidBounds[axis] = Math.min(centroidBounds[axis], centroids[primitive * 3 + axis]);
+                    centroidBounds[axis + 3] = Math.max(centroidBounds[axis + 3], centroids[primitive * 3 + axis]);
+                }
+            }
+
+            int count = end - start;
+            node.start = start;
+            node.count = count;
+            if (count <= MAX_LEAF_SIZE || depth >= MAX_DEPTH) {
+                return;
+            }
+
+            int mid = splitSAH(centroidBounds, count);
+            if (mid < 0) {
+                return; // Разбиение дороже листа
+            }
+
+            BuildTask left = new BuildTask(bounds, centroids, order, start, mid, depth + 1);
+            BuildTask right = new BuildTask(bounds, centroids, order, mid, end, depth + 1);
+            if (count > PARALLEL_THRESHOLD) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+            node.left = left.node;
+            node.right = right.node;
+        }
+
+        // Бинированный SAH: возвращает границу разбиения в order или -1, если выгоднее оставить лист
+        private int splitSAH(float[] centroidBounds, int count) {
+            int bestAxis = -1;
+            int bestBin = -1;
+            float bestCost = Float.MAX_VALUE;
+
+            int[] binCounts = new int[BIN_COUNT];
+            float[] binBounds = new float[BIN_COUNT * 6];
+            float[] rightAreas = new float[BIN_COUNT];
+
+            for (int axis = 0; axis < 3; axis++) {
+                float minC = centroidBounds[axis];
+                float extent = centroidBounds[axis + 3] - minC;
+                if (extent <= 0) continue;
+                float scale = BIN_COUNT / extent;
+
+                Arrays.fill(binCounts, 0);
+                for (int b = 0; b < BIN_COUNT; b++) {
+                    resetBounds(binBounds, b);
+                }
+                for (int i = start; i < end; i++) {
+                    int primitive = order[i];
+                    int bin = Math.min(BIN_COUNT - 1, (int) ((centroids[primitive * 3 + axis] - minC) * scale));
+                    binCounts[bin]++;
+                    growBounds(binBounds, bin, bounds, primitive);
+                }
+
+                // Проход справа налево: площади правых частей
+                float[] accumulated = new float[6];
+                resetBounds(accumulated, 0);
+                for (int b = BIN_COUNT - 1; b > 0; b--) {
+                    growBounds(accumulated, 0, binBounds, b);
+                    rightAreas[b] = surfaceArea(accumulated);
+                }
+
+                // Проход слева направо: выбор лучшей плоскости
+                resetBounds(accumulated, 0);
+                int leftCount = 0;
+                for (int b = 0; b < BIN_COUNT - 1; b++) {
+                    leftCount += binCounts[b];
+                    growBounds(accumulated, 0, binBounds, b);
+                    int rightCount = count - leftCount;
+                    if (leftCount == 0 || rightCount == 0) continue;
+                    float cost = leftCount * surfaceArea(accumulated) + rightCount * rightAreas[b + 1];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestBin = b;
+                    }
+                }
+            }
+
+            if (bestAxis < 0) {
+                // Все центры совпадают: делим пополам, чтобы не получить огромный лист
+                return count > MAX_LEAF_SIZE * 4 ? start + count / 2 : -1;
+            }
+
+            float leafCost = count * INTERSECTION_COST;
+            float splitCost = TRAVERSAL_COST + INTERSECTION_COST * bestCost / surfaceArea(node.bounds);
+            if (splitCost >= leafCost && count <= MAX_LEAF_SIZE * 4) {
+                return -1;
+            }
+
+            // Разделение индексов на месте по выбранной плоскости
+            float minC = centroidBounds[bestAxis];
+            float scale = BIN_COUNT / (centroidBounds[bestAxis + 3] - minC);
+            int i = start;
+            int j = end - 1;
+            while (i <= j) {
+                int bin = Math.min(BIN_COUNT - 1, (int) ((centroids[order[i] * 3 + bestAxis] - minC) * scale));
+                if (bin <= bestBin) {
+                    i++;
+                } else {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    j--;
+                }
+            }
+            return i;
+        }
+    }
+
+    private static void resetBounds(float[] target, int index) {
+        for (int axis = 0; axis < 3; axis++) {
+            target[index * 6 + axis] = Float.MAX_VALUE;
+            target[index * 6 + axis + 3] = -Float.MAX_VALUE;
+        }
+    }
+
+    private static void growBounds(float[] target, int index, float[] source, int sourceIndex) {
+        for (int axis = 0; axis < 3; axis++) {
+            target[index * 6 + axis] = Math.min(target[index * 6 + axis], source[sourceIndex * 6 + axis]);
+            target[index * 6 + axis + 3] = Math.max(target[index * 6 + axis + 3], source[sourceIndex * 6 + axis + 3]);
+        }
+    }
+
+    private static float surfaceArea(float[] box) {
+        float dx = box[3] - box[0];
+        float dy = box[4] - box[1];
+        float dz = box[5] - box[2];
+        if (dx < 0 || dy < 0 || dz < 0) return 0;
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+}
@@ -0,0 +1,14 @@
+package Engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Событие JFR на вывод готового кадра в Renderer
+@Name("Engine.Blit")
+@Label("Вывод кадра")
+@Category("Renderer")
+@StackTrace(false)
+class BlitEvent extends jdk.jfr.Event {
+}
@@ -0,0 +1,76 @@
+package Engine;
+
+import Drawable.Matrix4x4;
+import Drawable.Vector3;
+
+public class Camera {
+    private double fov;
+    // Меняется на месте: запись и чтение - под блокировкой камеры
+    private final Matrix4x4 transformation;
+    // Увеличивается при каждом перемещении или повороте; поток рендера читает её без блокировки,
+    // а положение и оси снимает под блокировкой камеры
+    private volatile long version;
+
+    public Camera(Vector3 position, Matrix4x4 orientation, double fov) {
+        this.transformation = Matrix4x4.transformation(position, orientation);
+        this.fov = fov;
+    }
+
+    public double getFov() {
+        return fov;
+    }
+
+    public synchronized float[] getTransformation() {
+        return transformation.toArray();
+    }
+
+    public synchronized Vector3 getPosition() {
+        return transformation.extractPosition();
+    }
+
+    public synchronized Vector3 getPosition(Vector3 dest) {
+        return transformation.extractPosition(dest);
+    }
+
+    public synchronized Matrix4x4 getOrientation() {
+        return transformation.extractOrientation();
+    }
+
+    public synchronized void move(Vector3 delta) {
+        transformation.translate(delta);
+        version++;
+    }
+
+    public synchronized void rotate(Vector3 axis, double angle) {
+        transformation.rotate(axis, angle);
+        version++;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public synchronized Vector3 getForward() {
+        return transformation.extractForward();
+    }
+
+    public synchronized Vector3 getForward(Vector3 dest) {
+        return transformation.extractForward(dest);
+    }
+
+    public synchronized Vector3 getUp() {
+        return transformation.extractUp();
+    }
+
+    public synchronized Vector3 getUp(Vector3 dest) {
+        return transformation.extractUp(dest);
+    }
+
+    public synchronized Vector3 getRight() {
+        return transformation.extractRight();
+    }
+
+    public synchronized Vector3 getRight(Vector3 dest) {
+        return transformation.extractRight(dest);
+    }
+}
@@ -0,0 +1,44 @@
+package Engine;
+
+// Разрешение рендера во время движения камеры. Пока приходит ввод, кадр считается в долю
+// полного разрешения (level / FULL по каждой оси) и растягивается при выводе; доля подбирается
+// по времени прошлых кадров под целевое. После паузы ввода рендер возвращается к полному
+// разрешению и дальше уточняет изображение прогрессивно.
+class DynamicResolution {
+    static final int FULL = 8;       // Ступени по 1/8 размера: меньше разных буферов и ядер
+    private static final int MIN_LEVEL = 2;
+
+    private final boolean enabled;
+    private final long targetNanos;
+    private final long idleNanos;
+    private int level = FULL / 2;    // Ступень кадров в движении
+    private long lastInput = Long.MIN_VALUE / 2;
+
+    DynamicResolution(boolean enabled, double targetMillis, long idleMillis) {
+        this.enabled = enabled;
+        this.targetNanos = (long) (targetMillis * 1e6);
+        this.idleNanos = idleMillis * 1_000_000;
+    }
+
+    void inputArrived(long now) {
+        lastInput = now;
+    }
+
+    boolean isMoving(long now) {
+        return enabled && now - lastInput < idleNanos;
+    }
+
+    // Ступень следующего кадра: подобранная, пока ввод был недавно, иначе полная
+    int levelAt(long now) {
+        return isMoving(now) ? level : FULL;
+    }
+
+    // Время кадра в движении примерно пропорционально числу пикселей, то есть квадрату ступени.
+    // Вниз можно сразу на сколько нужно, вверх - на одну ступень за кадр, чтобы не раскачиваться
+    void frameRendered(int renderedLevel, long frameNanos) {
+        if (frameNanos <= 0) return;
+        int next = (int) Math.floor(renderedLevel * Math.sqrt((double) targetNanos / frameNanos));
+        next = Math.max(MIN_LEVEL, Math.min(FULL, next));
+        level = Math.min(next, renderedLevel + 1);
+    }
+}
@@ -0,0 +1,47 @@
+package Engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Событие JFR на каждый RenderContext.render; длительность события - весь кадр без вывода на экран
+@Name("Engine.Frame")
+@Label("Кадр")
+@Category("Renderer")
+@StackTrace(false)
+class FrameEvent extends jdk.jfr.Event {
+    @Label("Номер кадра")
+    long frame;
+
+    @Label("Упаковка сцены")
+    @Description("flush SceneBuffer, BVH и загрузка сцены и камеры в ядро")
+    @Timespan(Timespan.NANOSECONDS)
+    long pack;
+
+    @Label("Исполнение ядра")
+    @Timespan(Timespan.NANOSECONDS)
+    long execute;
+
+    @Label("Передача")
+    @Description("Чтение пикселей, флагов и счётчиков лучей с устройства")
+    @Timespan(Timespan.NANOSECONDS)
+    long transfer;
+
+    @Label("Лучей")
+    long rays;
+
+    @Label("Выделено")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+
+    @Label("Режим исполнения")
+    String executionMode;
+
+    @Label("Запасной режим")
+    @Description("Aparapi не смог запустить OpenCL и молча перешёл на Java")
+    boolean fallback;
+}
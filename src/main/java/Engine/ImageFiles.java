@@ -0,0 +1,101 @@
+package Engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+// Запись кадра (0xRRGGBB на пиксель) в PNG или PPM без ImageIO и AWT
+public class ImageFiles {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // Формат выбирается по расширению файла: .ppm или .png
+    public static void write(int[] pixels, int width, int height, Path path) throws IOException {
+        if (!isSupported(path)) {
+            throw new IllegalArgumentException("Неизвестный формат изображения: " + path);
+        }
+        if (extension(path).equals(".ppm")) {
+            writePPM(pixels, width, height, path);
+        } else {
+            writePNG(pixels, width, height, path);
+        }
+    }
+
+    // Для проверки аргументов до рендера
+    public static boolean isSupported(Path path) {
+        String extension = extension(path);
+        return extension.equals(".ppm") || extension.equals(".png");
+    }
+
+    private static String extension(Path path) {
+        Path fileName = path.getFileName();
+        String name = fileName != null ? fileName.toString().toLowerCase() : "";
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot) : "";
+    }
+
+    public static void writePPM(int[] pixels, int width, int height, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            out.write(("P6\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+            byte[] row = new byte[width * 3];
+            for (int y = 0; y < height; y++) {
+                packRow(pixels, y * width, width, row, 0);
+                out.write(row);
+            }
+        }
+    }
+
+    public static void writePNG(int[] pixels, int width, int height, Path path) throws IOException {
+        // Строки с фильтром 0 (None): каждая начинается с байта фильтра
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            byte[] row = new byte[1 + width * 3];
+            for (int y = 0; y < height; y++) {
+                packRow(pixels, y * width, width, row, 1);
+                deflater.write(row);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.write(PNG_SIGNATURE);
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerData = new DataOutputStream(header);
+            headerData.writeInt(width);
+            headerData.writeInt(height);
+            headerData.writeByte(8);  // Бит на канал
+            headerData.writeByte(2);  // Truecolor RGB
+            headerData.writeByte(0);  // Deflate
+            headerData.writeByte(0);  // Адаптивная фильтрация
+            headerData.writeByte(0);  // Без чересстрочности
+            writeChunk(out, "IHDR", header.toByteArray());
+            writeChunk(out, "IDAT", compressed.toByteArray());
+            writeChunk(out, "IEND", new byte[0]);
+        }
+    }
+
+    private static void packRow(int[] pixels, int start, int width, byte[] row, int offset) {
+        for (int x = 0; x < width; x++) {
+            int color = pixels[start + x];
+            row[offset++] = (byte) (color >> 16);
+            row[offset++] = (byte) (color >> 8);
+            row[offset++] = (byte) color;
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+}
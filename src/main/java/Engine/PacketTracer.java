@@ -0,0 +1,235 @@
+package Engine;
+
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Пакетная трассировка первичных лучей на Vector API (нужен --add-modules jdk.incubator.vector).
+// Лучи соседних пикселей строки идут пакетом по числу линий FloatVector (8 для AVX2, 16 для AVX-512):
+// каждая фигура проверяется сразу со всеми лучами пакета, промахи и неактивные линии отсекаются масками.
+// Пакет находит только ближайшую фигуру каждого луча, дальше путь пикселя продолжает скалярный
+// код RayTracingKernel. Формулы повторяют intersectBox/intersectSphere операция в операцию,
+// поэтому без BVH выбирается та же фигура, что и в скалярном коде.
+// Один экземпляр на поток: рабочие массивы пакета свои, данные сцены берутся из ядра.
+// Векторы живут только в локальных переменных методов и каждый раз читаются из массивов пакета:
+// в полях или между невстроенными вызовами JIT превратил бы их в объекты.
+public class PacketTracer {
+    static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, SPECIES.vectorShape());
+    public static final int PACKET_SIZE = SPECIES.length();
+
+    private final RayTracingKernel kernel;
+    private final float[] boxes;
+    private final float[] spheres;
+    private final float[] nodeBounds;
+    private final int[] nodeLinks;
+    private final int[] primitives;
+    private final boolean useBvh;
+    private final float originX;  // Первичные лучи выходят из камеры - начало у пакета общее
+    private final float originY;
+    private final float originZ;
+
+    // Рабочие массивы пакета: направления лучей, ближайшее t и ссылка на фигуру (-1 - промах)
+    final float[] dirX = new float[PACKET_SIZE];
+    final float[] dirY = new float[PACKET_SIZE];
+    final float[] dirZ = new float[PACKET_SIZE];
+    final float[] closest = new float[PACKET_SIZE];
+    final int[] hits = new int[PACKET_SIZE];
+    private final float[] invX = new float[PACKET_SIZE];
+    private final float[] invY = new float[PACKET_SIZE];
+    private final float[] invZ = new float[PACKET_SIZE];
+    private final int[] pixelIds = new int[PACKET_SIZE];
+    private final int[] traversalStack = new int[BVH.STACK_SIZE];
+
+    public PacketTracer(RayTracingKernel kernel) {
+        this.kernel = kernel;
+        this.boxes = kernel.getBoxes();
+        this.spheres = kernel.getSpheres();
+        this.nodeBounds = kernel.getBvhNodeBounds();
+        this.nodeLinks = kernel.getBvhNodeLinks();
+        this.primitives = kernel.getBvhPrimitives();
+        this.useBvh = kernel.isUsingBvh();
+        float[] origin = kernel.getCameraPosition();
+        this.originX = origin[0];
+        this.originY = origin[1];
+        this.originZ = origin[2];
+    }
+
+    // Один сэмпл всех пикселей прямоугольника [x0, x1) x [y0, y1), пакетами вдоль строк
+    void renderTile(int x0, int y0, int x1, int y1, int width) {
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x += PACKET_SIZE) {
+                int count = 0;
+                for (int px = x; px < Math.min(x + PACKET_SIZE, x1); px++) {
+                    int id = y * width + px;
+                    if (kernel.needsSample(id)) {
+                        kernel.writePrimaryRay(id, dirX, dirY, dirZ, count);
+                        pixelIds[count++] = id;
+                    }
+                }
+                if (count == 0) continue;
+
+                trace(count);
+                for (int lane = 0; lane < count; lane++) {
+                    kernel.renderPixelFromHit(pixelIds[lane], hits[lane]);
+                }
+            }
+        }
+    }
+
+    // Ближайшие пересечения первых count лучей из dirX, dirY, dirZ записываются в hits и closest
+    void trace(int count) {
+        // Пустые линии повторяют первый луч с пределом -1: ни узел, ни фигура в них не пересекаются
+        for (int lane = count; lane < PACKET_SIZE; lane++) {
+            dirX[lane] = dirX[0];
+            dirY[lane] = dirY[0];
+            dirZ[lane] = dirZ[0];
+        }
+        for (int lane = 0; lane < PACKET_SIZE; lane++) {
+            closest[lane] = lane < count ? Float.MAX_VALUE : -1.0f;
+            hits[lane] = -1;
+        }
+
+        if (useBvh) {
+            traverseBvh();
+        } else {
+            for (int i = 0; i < boxes.length; i += Parallelepiped.GPU_STRIDE) {
+                intersectBoxes(i);
+            }
+            for (int i = 0; i < spheres.length; i += Sphere.GPU_STRIDE) {
+                intersectSpheres(i);
+            }
+        }
+    }
+
+    // Узел обходится, если его границы пересекает хотя бы один луч пакета ближе его текущего попадания
+    private void traverseBvh() {
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        one.div(FloatVector.fromArray(SPECIES, dirX, 0)).intoArray(invX, 0);
+        one.div(FloatVector.fromArray(SPECIES, dirY, 0)).intoArray(invY, 0);
+        one.div(FloatVector.fromArray(SPECIES, dirZ, 0)).intoArray(invZ, 0);
+
+        int stackSize = 1;
+        traversalStack[0] = 0;
+        while (stackSize > 0) {
+            int node = traversalStack[--stackSize];
+            if (nodeEntry(node) == Float.MAX_VALUE) continue;
+
+            int first = nodeLinks[node * 2];
+            int count = nodeLinks[node * 2 + 1];
+            if (count > 0) {
+                for (int i = first; i < first + count; i++) {
+                    int ref = primitives[i];
+                    if ((ref & 1) == 0) {
+                        intersectBoxes(ref >> 1);
+                    } else {
+                        intersectSpheres(ref >> 1);
+                    }
+                }
+            } else {
+                // Ближний для пакета потомок кладём последним, чтобы обойти его первым
+                float left = nodeEntry(first);
+                float right = nodeEntry(first + 1);
+                if (left != Float.MAX_VALUE && right != Float.MAX_VALUE) {
+                    traversalStack[stackSize] = left <= right ? first + 1 : first;
+                    traversalStack[stackSize + 1] = left <= right ? first : first + 1;
+                    stackSize += 2;
+                } else if (left != Float.MAX_VALUE || right != Float.MAX_VALUE) {
+                    traversalStack[stackSize++] = left != Float.MAX_VALUE ? first : first + 1;
+                }
+            }
+        }
+    }
+
+    // Наименьшее расстояние входа в узел среди лучей, которые его пересекают, или Float.MAX_VALUE
+    private float nodeEntry(int node) {
+        FloatVector ix = FloatVector.fromArray(SPECIES, invX, 0);
+        FloatVector iy = FloatVector.fromArray(SPECIES, invY, 0);
+        FloatVector iz = FloatVector.fromArray(SPECIES, invZ, 0);
+        FloatVector best = FloatVector.fromArray(SPECIES, closest, 0);
+        int base = node * 6;
+        FloatVector tx0 = ix.mul(nodeBounds[base] - originX);
+        FloatVector tx1 = ix.mul(nodeBounds[base + 3] - originX);
+        FloatVector ty0 = iy.mul(nodeBounds[base + 1] - originY);
+        FloatVector ty1 = iy.mul(nodeBounds[base + 4] - originY);
+        FloatVector tz0 = iz.mul(nodeBounds[base + 2] - originZ);
+        FloatVector tz1 = iz.mul(nodeBounds[base + 5] - originZ);
+
+        FloatVector tNear = tx0.min(tx1).max(ty0.min(ty1)).max(tz0.min(tz1).max(0.0f));
+        FloatVector tFar = tx0.max(tx1).min(ty0.max(ty1)).min(tz0.max(tz1).min(best));
+        VectorMask<Float> entered = tNear.compare(VectorOperators.LE, tFar);
+        return entered.anyTrue() ? tNear.reduceLanes(VectorOperators.MIN, entered) : Float.MAX_VALUE;
+    }
+
+    // Пакет против одного параллелепипеда: см. RayTracingKernel.intersectBox
+    private void intersectBoxes(int offset) {
+        FloatVector dx = FloatVector.fromArray(SPECIES, dirX, 0);
+        FloatVector dy = FloatVector.fromArray(SPECIES, dirY, 0);
+        FloatVector dz = FloatVector.fromArray(SPECIES, dirZ, 0);
+        FloatVector best = FloatVector.fromArray(SPECIES, closest, 0);
+        float px = originX - boxes[offset + 4];
+        float py = originY - boxes[offset + 5];
+        float pz = originZ - boxes[offset + 6];
+        float lox = boxes[offset + 16] * px + boxes[offset + 17] * py + boxes[offset + 18] * pz;
+        float loy = boxes[offset + 19] * px + boxes[offset + 20] * py + boxes[offset + 21] * pz;
+        float loz = boxes[offset + 22] * px + boxes[offset + 23] * py + boxes[offset + 24] * pz;
+        FloatVector ldx = dx.mul(boxes[offset + 16]).add(dy.mul(boxes[offset + 17])).add(dz.mul(boxes[offset + 18]));
+        FloatVector ldy = dx.mul(boxes[offset + 19]).add(dy.mul(boxes[offset + 20])).add(dz.mul(boxes[offset + 21]));
+        FloatVector ldz = dx.mul(boxes[offset + 22]).add(dy.mul(boxes[offset + 23])).add(dz.mul(boxes[offset + 24]));
+        float halfX = boxes[offset + 13];
+        float halfY = boxes[offset + 14];
+        float halfZ = boxes[offset + 15];
+
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        FloatVector invX = one.div(ldx);
+        FloatVector invY = one.div(ldy);
+        FloatVector invZ = one.div(ldz);
+        FloatVector tx0 = invX.mul(-halfX - lox);
+        FloatVector tx1 = invX.mul(halfX - lox);
+        FloatVector ty0 = invY.mul(-halfY - loy);
+        FloatVector ty1 = invY.mul(halfY - loy);
+        FloatVector tz0 = invZ.mul(-halfZ - loz);
+        FloatVector tz1 = invZ.mul(halfZ - loz);
+        FloatVector tMin = tx0.min(tx1).max(ty0.min(ty1)).max(tz0.min(tz1));
+        FloatVector tMax = tx0.max(tx1).min(ty0.max(ty1)).min(tz0.max(tz1));
+
+        // Отказ записан так же, как в скалярном коде, чтобы NaN вели себя одинаково. Запись попаданий -
+        // здесь же, а не в общем методе: невстроенный вызов с векторами в аргументах выделяет память
+        VectorMask<Float> hit = tMax.compare(VectorOperators.LE, tMin)
+                .or(tMin.compare(VectorOperators.LE, 0.0f))
+                .or(tMin.compare(VectorOperators.GE, best)).not();
+        if (hit.anyTrue()) { // Линии с попаданием получают новое t и ссылку на фигуру
+            best.blend(tMin, hit).intoArray(closest, 0);
+            IntVector.fromArray(INT_SPECIES, hits, 0).blend(offset << 1, hit.cast(INT_SPECIES)).intoArray(hits, 0);
+        }
+    }
+
+    // Пакет против одной сферы: см. RayTracingKernel.intersectSphere
+    private void intersectSpheres(int offset) {
+        FloatVector dx = FloatVector.fromArray(SPECIES, dirX, 0);
+        FloatVector dy = FloatVector.fromArray(SPECIES, dirY, 0);
+        FloatVector dz = FloatVector.fromArray(SPECIES, dirZ, 0);
+        FloatVector best = FloatVector.fromArray(SPECIES, closest, 0);
+        float ocx = originX - spheres[offset + 4];
+        float ocy = originY - spheres[offset + 5];
+        float ocz = originZ - spheres[offset + 6];
+
+        FloatVector a = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+        FloatVector b = dx.mul(ocx).add(dy.mul(ocy)).add(dz.mul(ocz)).mul(2.0f);
+        float c = ocx * ocx + ocy * ocy + ocz * ocz - spheres[offset + 14];
+
+        FloatVector discriminant = b.mul(b).sub(a.mul(4.0f).mul(c));
+        FloatVector t = b.neg().sub(discriminant.sqrt()).div(a.mul(2.0f));
+        VectorMask<Float> hit = discriminant.compare(VectorOperators.LT, 0.0f)
+                .or(t.compare(VectorOperators.LE, 0.0f))
+                .or(t.compare(VectorOperators.GE, best)).not();
+        if (hit.anyTrue()) {
+            best.blend(t, hit).intoArray(closest, 0);
+            IntVector.fromArray(INT_SPECIES, hits, 0).blend((offset << 1) | 1, hit.cast(INT_SPECIES)).intoArray(hits, 0);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package Engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Стоимость пикселей накопления в среднем на сэмпл: отскоки, проверки пересечений (узлы BVH и фигуры)
+// и теневые лучи. Ядро копит суммы только после RenderContext.setStatistics(true), здесь они делятся
+// на число сэмплов пикселя и превращаются в тепловую карту или CSV
+public class PixelStatistics {
+    public enum Counter {
+        BOUNCES("Отскоки"),
+        TESTS("Проверки пересечений"),
+        SHADOW_RAYS("Теневые лучи");
+
+        private final String title;
+
+        Counter(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private static final int HISTOGRAM_BINS = 1024;
+    // Опорные цвета шкалы от нуля до 99-го процентиля: синий, голубой, зелёный, жёлтый, красный
+    private static final int[] RAMP = {0x0000FF, 0x00FFFF, 0x00FF00, 0xFFFF00, 0xFF0000};
+
+    private final int width;
+    private final int height;
+    private final float[] values;   // 3 на пиксель, порядок Counter
+    private final float[] mean = new float[3];
+    private final float[] max = new float[3];
+    private final int[] histogram = new int[HISTOGRAM_BINS];
+
+    PixelStatistics(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.values = new float[width * height * 3];
+    }
+
+    // sums - суммы ядра по пикселям; samples - сэмплы каждого пикселя (адаптивный режим) или null,
+    // тогда у всех пикселей sampleCount сэмплов
+    void update(int[] sums, int[] samples, int sampleCount) {
+        int pixelCount = width * height;
+        double[] total = new double[3];
+        max[0] = max[1] = max[2] = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            int count = samples != null ? samples[i] : sampleCount;
+            float scale = count > 0 ? 1.0f / count : 0;
+            for (int k = 0; k < 3; k++) {
+                float value = sums[i * 3 + k] * scale;
+                values[i * 3 + k] = value;
+                total[k] += value;
+                max[k] = Math.max(max[k], value);
+            }
+        }
+        for (int k = 0; k < 3; k++) {
+            mean[k] = (float) (total[k] / pixelCount);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float get(int x, int y, Counter counter) {
+        return values[(y * width + x) * 3 + counter.ordinal()];
+    }
+
+    public float getMean(Counter counter) {
+        return mean[counter.ordinal()];
+    }
+
+    public float getMax(Counter counter) {
+        return max[counter.ordinal()];
+    }
+
+    // Тепловая карта в target (0xRRGGBB на пиксель). Шкала до 99-го процентиля, чтобы единичные
+    // дорогие пиксели не делали остальную карту синей
+    public void heatmap(Counter counter, int[] target) {
+        int k = counter.ordinal();
+        int pixelCount = width * height;
+        float limit = percentile(k, 0.99f);
+        float scale = limit > 0 ? (RAMP.length - 1) / limit : 0;
+        for (int i = 0; i < pixelCount; i++) {
+            float position = Math.min(values[i * 3 + k] * scale, RAMP.length - 1);
+            int stop = Math.min((int) position, RAMP.length - 2);
+            target[i] = lerpColor(RAMP[stop], RAMP[stop + 1], position - stop);
+        }
+    }
+
+    // Значение, не больше которого fraction пикселей; по гистограмме от 0 до max без сортировки
+    private float percentile(int k, float fraction) {
+        if (max[k] <= 0) return 0;
+        Arrays.fill(histogram, 0);
+        int pixelCount = width * height;
+        float scale = (HISTOGRAM_BINS - 1) / max[k];
+        for (int i = 0; i < pixelCount; i++) {
+            histogram[(int) (values[i * 3 + k] * scale)]++;
+        }
+        int target = (int) Math.ceil(pixelCount * fraction);
+        int seen = 0;
+        for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+            seen += histogram[bin];
+            if (seen >= target) {
+                return Math.max((bin + 1) / scale, Float.MIN_NORMAL);
+            }
+        }
+        return max[k];
+    }
+
+    private static int lerpColor(int from, int to, float t) {
+        int r = (int) (((from >> 16) & 0xFF) + (((to >> 16) & 0xFF) - ((from >> 16) & 0xFF)) * t);
+        int g = (int) (((from >> 8) & 0xFF) + (((to >> 8) & 0xFF) - ((from >> 8) & 0xFF)) * t);
+        int b = (int) ((from & 0xFF) + ((to & 0xFF) - (from & 0xFF)) * t);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    // Строка на пиксель: x,y,bounces,tests,shadowRays
+    public void writeCsv(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            out.write("x,y,bounces,tests,shadowRays");
+            out.newLine();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = (y * width + x) * 3;
+                    out.write(String.format(Locale.ROOT, "%d,%d,%.3f,%.3f,%.3f", x, y, values[i], values[i + 1], values[i + 2]));
+                    out.newLine();
+                }
+            }
+        }
+    }
+}
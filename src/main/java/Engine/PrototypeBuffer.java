@@ -0,0 +1,100 @@
+package Engine;
+
+import Drawable.Prototype;
+import Drawable.Shape;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Геометрия прототипов экземпляров для ядра: записи фигур прототипа и его BVH нижнего уровня
+// упаковываются один раз, при первом экземпляре. Все прототипы лежат в общих массивах один за другим,
+// экземпляр ссылается на корень дерева своего прототипа. Ссылки на фигуры - как в SceneBuffer,
+// только смещения - в массивах прототипов. Упакованный прототип остаётся в буфере и без экземпляров
+class PrototypeBuffer {
+    private final Map<Prototype, Integer> roots = new IdentityHashMap<>();
+    // Пока прототипов нет, массивы не пустые: OpenCL не принимает буферы нулевой длины
+    private float[] boxes = new float[Parallelepiped.GPU_STRIDE];
+    private float[] spheres = new float[Sphere.GPU_STRIDE];
+    private int boxLength;
+    private int sphereLength;
+    private float[] nodeBounds = new float[6];
+    private int[] nodeLinks = new int[2];
+    private int[] primitives = new int[1];
+    private int nodeCount;
+    private int primitiveCount;
+    private BVH bvh;  // Общие массивы деревьев; null - после последнего add ещё не собран
+
+    // Корень дерева прототипа; при первом обращении прототип упаковывается
+    int add(Prototype prototype) {
+        Integer root = roots.get(prototype);
+        if (root != null) return root;
+
+        List<Shape> shapes = prototype.getShapes();
+        float[] bounds = new float[shapes.size() * 6];
+        int[] refs = new int[shapes.size()];
+        for (int i = 0; i < shapes.size(); i++) {
+            Shape shape = shapes.get(i);
+            shape.writeBounds(bounds, i * 6);
+            refs[i] = switch (shape.getGPUType()) {
+                case Shape.GPU_TYPE_BOX -> {
+                    boxes = ensureCapacity(boxes, boxLength + Parallelepiped.GPU_STRIDE);
+                    shape.writeGPUData(boxes, boxLength);
+                    boxLength += Parallelepiped.GPU_STRIDE;
+                    yield (boxLength - Parallelepiped.GPU_STRIDE) << 1;
+                }
+                case Shape.GPU_TYPE_SPHERE -> {
+                    spheres = ensureCapacity(spheres, sphereLength + Sphere.GPU_STRIDE);
+                    shape.writeGPUData(spheres, sphereLength);
+                    sphereLength += Sphere.GPU_STRIDE;
+                    yield ((sphereLength - Sphere.GPU_STRIDE) << 1) | 1;
+                }
+                default -> throw new IllegalArgumentException("Неизвестный тип записи " + shape.getGPUType());
+            };
+        }
+
+        // Дерево прототипа дописывается за предыдущими: ссылки на потомков и примитивы сдвигаются
+        BVH tree = BVH.build(bounds, refs, shapes.size());
+        int nodeBase = nodeCount;
+        int primitiveBase = primitiveCount;
+        nodeCount += tree.getNodeCount();
+        primitiveCount += tree.getPrimitives().length;
+        nodeBounds = Arrays.copyOf(nodeBounds, nodeCount * 6);
+        nodeLinks = Arrays.copyOf(nodeLinks, nodeCount * 2);
+        primitives = Arrays.copyOf(primitives, primitiveCount);
+        System.arraycopy(tree.getNodeBounds(), 0, nodeBounds, nodeBase * 6, tree.getNodeCount() * 6);
+        int[] links = tree.getNodeLinks();
+        for (int node = 0; node < tree.getNodeCount(); node++) {
+            int count = links[node * 2 + 1];
+            nodeLinks[(nodeBase + node) * 2] = links[node * 2] + (count > 0 ? primitiveBase : nodeBase);
+            nodeLinks[(nodeBase + node) * 2 + 1] = count;
+        }
+        System.arraycopy(tree.getPrimitives(), 0, primitives, primitiveBase, tree.getPrimitives().length);
+
+        roots.put(prototype, nodeBase);
+        bvh = null;
+        return nodeBase;
+    }
+
+    private static float[] ensureCapacity(float[] data, int required) {
+        return required <= data.length ? data : Arrays.copyOf(data, Math.max(required, data.length * 2));
+    }
+
+    float[] getBoxData() {
+        return boxes;
+    }
+
+    float[] getSphereData() {
+        return spheres;
+    }
+
+    BVH getBVH() {
+        if (bvh == null) {
+            bvh = new BVH(nodeBounds, nodeLinks, primitives, nodeCount);
+        }
+        return bvh;
+    }
+}
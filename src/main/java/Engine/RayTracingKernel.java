@@ -0,0 +1,1341 @@
+package Engine;
+
+import Drawable.Instance;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import com.aparapi.Kernel;
+
+public class RayTracingKernel extends Kernel {
+    // До стольких эмиттеров освещение считается от каждого; больше - выбирается один пропорционально мощности
+    private static final int MAX_EXACT_EMITTERS = 8;
+    // Первичное пересечение ещё не найдено - traceRay ищет его сам (иначе его передал PacketTracer)
+    static final int TRACE_PRIMARY = -2;
+
+    private float[] lightColor = {1.0f, 1.0f, 1.0f};
+    private int width;
+    private int height;
+    private float[] cameraPosition;  // Положение камеры
+    private float[] cameraDirection; // Направление камеры
+    private float[] cameraUp;        // Вектор "вверх"
+    private float[] cameraRight;     // Вектор "вправо"
+    private float fov;               // Поле зрения камеры
+    private float[] lightPosition;   // Положение источника света
+    private float[] boxes;           // Записи параллелепипедов (шаг Parallelepiped.GPU_STRIDE)
+    private float[] spheres;         // Записи сфер (шаг Sphere.GPU_STRIDE)
+    private float[] emitters = new float[SceneBuffer.EMITTER_STRIDE]; // Таблица эмиттеров (см. SceneBuffer)
+    private float[] emitterCdf = new float[1];                        // Накопленная доля мощности эмиттеров
+    private int emitterCount;
+    private int[] pixels;           // Результирующие пиксели
+    private float[] accumulation;    // Сумма сэмплов по пикселям (RGB) для прогрессивного рендеринга
+    private int[] rayCounts;         // Число лучей, выпущенных для пикселя в последнем кадре
+    // Стоимость пикселя (3 на пиксель: отскоки, проверки пересечений, теневые лучи), сумма по сэмплам накопления.
+    // Пока statistics выключен, массив не пишется и не выделяется
+    private int[] pixelStats = new int[3];
+    private boolean statistics;
+    // Адаптивный режим: сэмплы получают только пиксели из activePixels, остальные уже сошлись
+    private boolean adaptive;
+    private int[] activePixels = new int[1];
+    private int activeCount;
+    private int[] sampleCounts;      // Сэмплов в накоплении каждого пикселя
+    private float[] luminanceMean;   // Среднее яркости пикселя (алгоритм Уэлфорда)
+    private float[] luminanceM2;     // Сумма квадратов отклонений яркости от среднего
+    private int[] pixelActive;       // 1 - шумный, 0 - сошёлся, -1 - исчерпал лимит сэмплов (см. AdaptiveSampler)
+    private int minSamples;
+    private int maxSamples;
+    private float errorThreshold;    // Допустимая относительная стандартная ошибка среднего
+    private int sampleIndex;         // Сколько сэмплов уже накоплено в accumulation
+    private int frameNumber;         // Номер кадра - входит в зерно генератора случайных чисел
+    private int seed;                // Базовое зерно: одинаковое зерно даёт побитово одинаковые кадры
+    private int maxReflections;               // Поле зрения камеры
+    private int emitterIntensity;               // Поле зрения камеры
+    private float[] bvhNodeBounds;   // Границы узлов BVH (6 на узел)
+    private int[] bvhNodeLinks;      // Потомок/первый примитив и число примитивов (2 на узел)
+    private int[] bvhPrimitives;     // Ссылки на фигуры (см. SceneBuffer) в порядке листьев
+    private boolean useBvh = true;   // false - старый линейный перебор всех фигур
+    private ShapeColumns columns;    // Java-бэкенды: перебор столбцов на Vector API вместо BVH; в OpenCL не попадает
+    // Экземпляры (см. SceneBuffer): записи с шагом Instance.GPU_STRIDE и дерево верхнего уровня над ними,
+    // примитивы которого - смещения записей. Геометрия прототипов - свои записи фигур и деревья нижнего
+    // уровня в общих массивах (см. PrototypeBuffer). Пока instanceCount = 0, второй уровень не обходится
+    private float[] instances = new float[Instance.GPU_STRIDE];
+    private int instanceCount;
+    private float[] instanceNodeBounds = new float[6];
+    private int[] instanceNodeLinks = new int[2];
+    private int[] instancePrimitives = new int[1];
+    private float[] prototypeBoxes = new float[Parallelepiped.GPU_STRIDE];
+    private float[] prototypeSpheres = new float[Sphere.GPU_STRIDE];
+    private float[] prototypeNodeBounds = new float[6];
+    private int[] prototypeNodeLinks = new int[2];
+    private int[] prototypePrimitives = new int[1];
+
+    // Рабочие массивы отдельного потока (private memory в OpenCL): в горячем пути ядро ничего не выделяет
+    @PrivateMemorySpace(BVH.STACK_SIZE)
+    private int[] traversalStack = new int[BVH.STACK_SIZE];
+    @PrivateMemorySpace(BVH.STACK_SIZE)
+    private int[] instanceStack = new int[BVH.STACK_SIZE];  // Дерево экземпляров; traversalStack тем временем обходит прототип
+    @PrivateMemorySpace(4)
+    private float[] hitRecord = new float[4];  // t и нормаль ближайшего пересечения
+    @PrivateMemorySpace(3)
+    private float[] vec = new float[3];        // Результат векторных вспомогательных функций
+    @PrivateMemorySpace(1)
+    private int[] rngState = new int[1];       // Состояние генератора случайных чисел пикселя
+    @PrivateMemorySpace(1)
+    private int[] rayCounter = new int[1];     // Лучи текущего пикселя: поиск пересечений и теневые
+    @PrivateMemorySpace(3)
+    private int[] costCounter = new int[3];    // Текущий сэмпл: отскоки, проверки пересечений, теневые лучи
+    @PrivateMemorySpace(1)
+    private int[] columnHit = new int[1];      // Результат findClosestHitColumns
+    @PrivateMemorySpace(1)
+    private int[] lastOccluder = {-1};         // Ссылка на последнюю фигуру, загородившую свет
+    @PrivateMemorySpace(1)
+    private int[] hitInstance = {-1};          // Экземпляр ближайшего пересечения или -1 - фигура сцены
+
+    public RayTracingKernel(int width, int height, float[] lightPosition, int[] pixels,
+                            int maxReflections, int emitterIntensity) {
+        this.width = width;
+        this.height = height;
+        this.cameraPosition = new float[3];
+        this.cameraDirection = new float[3];
+        this.cameraUp = new float[3];
+        this.cameraRight = new float[3];
+        this.lightPosition = lightPosition;
+        this.pixels = pixels;
+        this.accumulation = new float[width * height * 3];
+        this.rayCounts = new int[width * height];
+        this.sampleCounts = new int[width * height];
+        this.luminanceMean = new float[width * height];
+        this.luminanceM2 = new float[width * height];
+        this.pixelActive = new int[width * height];
+        this.maxReflections = maxReflections;
+        this.emitterIntensity = emitterIntensity;
+    }
+
+    // Данные сцены для PacketTracer, который обходит их векторным кодом
+    float[] getBoxes() {
+        return boxes;
+    }
+
+    float[] getSpheres() {
+        return spheres;
+    }
+
+    float[] getBvhNodeBounds() {
+        return bvhNodeBounds;
+    }
+
+    int[] getBvhNodeLinks() {
+        return bvhNodeLinks;
+    }
+
+    int[] getBvhPrimitives() {
+        return bvhPrimitives;
+    }
+
+    boolean isUsingBvh() {
+        return useBvh;
+    }
+
+    float[] getCameraPosition() {
+        return cameraPosition;
+    }
+
+    // Обновляет параметры камеры в уже существующих массивах, чтобы не пересоздавать буферы ядра
+    public void setCamera(float[] position, float[] direction, float[] up, float[] right, float fov) {
+        System.arraycopy(position, 0, cameraPosition, 0, 3);
+        System.arraycopy(direction, 0, cameraDirection, 0, 3);
+        System.arraycopy(up, 0, cameraUp, 0, 3);
+        System.arraycopy(right, 0, cameraRight, 0, 3);
+        this.fov = fov;
+        if (isExplicit()) {
+            put(cameraPosition).put(cameraDirection).put(cameraUp).put(cameraRight);
+        }
+    }
+
+    // В явном режиме постоянные буферы передаются один раз при включении
+    @Override
+    public void setExplicit(boolean explicit) {
+        super.setExplicit(explicit);
+        if (explicit) {
+            put(lightColor).put(lightPosition);
+        }
+    }
+
+    public void setScene(float[] boxes, float[] spheres, BVH bvh) {
+        this.boxes = boxes;
+        this.spheres = spheres;
+        this.bvhNodeBounds = bvh.getNodeBounds();
+        this.bvhNodeLinks = bvh.getNodeLinks();
+        this.bvhPrimitives = bvh.getPrimitives();
+        if (isExplicit()) {
+            put(boxes).put(spheres).put(bvhNodeBounds).put(bvhNodeLinks).put(bvhPrimitives);
+        }
+    }
+
+    // Экземпляры и общая геометрия их прототипов; instanceCount = 0 выключает второй уровень обхода
+    public void setInstances(float[] instances, int instanceCount, BVH instanceBvh,
+                             float[] prototypeBoxes, float[] prototypeSpheres, BVH prototypeBvh) {
+        this.instances = instances;
+        this.instanceCount = instanceCount;
+        this.instanceNodeBounds = instanceBvh.getNodeBounds();
+        this.instanceNodeLinks = instanceBvh.getNodeLinks();
+        this.instancePrimitives = instanceBvh.getPrimitives();
+        this.prototypeBoxes = prototypeBoxes;
+        this.prototypeSpheres = prototypeSpheres;
+        this.prototypeNodeBounds = prototypeBvh.getNodeBounds();
+        this.prototypeNodeLinks = prototypeBvh.getNodeLinks();
+        this.prototypePrimitives = prototypeBvh.getPrimitives();
+        if (isExplicit()) {
+            put(instances).put(instanceNodeBounds).put(instanceNodeLinks).put(instancePrimitives)
+                    .put(prototypeBoxes).put(prototypeSpheres)
+                    .put(prototypeNodeBounds).put(prototypeNodeLinks).put(prototypePrimitives);
+        }
+    }
+
+    public void setEmitters(float[] emitters, float[] emitterCdf, int emitterCount) {
+        this.emitters = emitters;
+        this.emitterCdf = emitterCdf;
+        this.emitterCount = emitterCount;
+        if (isExplicit()) {
+            put(emitters).put(emitterCdf);
+        }
+    }
+
+    // 0 - начать накопление заново, иначе сэмпл добавляется к уже накопленным
+    public void setSampleIndex(int sampleIndex) {
+        this.sampleIndex = sampleIndex;
+    }
+
+    public void setFrame(int frameNumber, int seed) {
+        this.frameNumber = frameNumber;
+        this.seed = seed;
+    }
+
+    public void setUseBvh(boolean useBvh) {
+        this.useBvh = useBvh;
+    }
+
+    // null - обычный обход; только для исполнения на Java (TileRenderer)
+    public void setShapeColumns(ShapeColumns columns) {
+        this.columns = columns;
+    }
+
+    public void setAdaptive(boolean adaptive, int minSamples, int maxSamples, float errorThreshold) {
+        this.adaptive = adaptive;
+        this.minSamples = Math.max(AdaptiveSampler.MIN_SAMPLES, minSamples);
+        this.maxSamples = maxSamples;
+        this.errorThreshold = errorThreshold;
+    }
+
+    // Новый целевой буфер кадра (двойная буферизация в Renderer); ядро только пишет в него, put не нужен
+    public void setPixels(int[] pixels) {
+        this.pixels = pixels;
+    }
+
+    // Список пикселей следующего прохода адаптивного режима
+    public void setActivePixels(int[] activePixels, int activeCount) {
+        this.activePixels = activePixels;
+        this.activeCount = activeCount;
+        if (isExplicit()) {
+            put(activePixels);
+        }
+    }
+
+    // Включает счётчики стоимости по пикселям; накопление после этого нужно начать заново
+    public void setStatistics(boolean statistics) {
+        this.statistics = statistics;
+        if (statistics && pixelStats.length < width * height * 3) {
+            pixelStats = new int[width * height * 3];
+            if (isExplicit()) {
+                put(pixelStats);
+            }
+        }
+    }
+
+    // Суммы счётчиков по сэмплам накопления; в явном режиме перед чтением их нужно забрать через get
+    public int[] getPixelStats() {
+        return pixelStats;
+    }
+
+    // Флаги после прохода; в явном режиме перед чтением их нужно забрать через get
+    public int[] getPixelActive() {
+        return pixelActive;
+    }
+
+    // Счётчики последнего кадра; в явном режиме перед чтением их нужно забрать через get
+    // Сэмплов в накоплении каждого пикселя (адаптивный режим)
+    public int[] getSampleCounts() {
+        return sampleCounts;
+    }
+
+    public int[] getRayCounts() {
+        return rayCounts;
+    }
+
+    // В режиме JTP каждый поток работает со своей копией ядра - рабочие массивы у каждого свои
+    @Override
+    public RayTracingKernel clone() {
+        RayTracingKernel copy = (RayTracingKernel) super.clone();
+        copy.traversalStack = new int[BVH.STACK_SIZE];
+        copy.instanceStack = new int[BVH.STACK_SIZE];
+        copy.hitRecord = new float[4];
+        copy.vec = new float[3];
+        copy.rngState = new int[1];
+        copy.rayCounter = new int[1];
+        copy.costCounter = new int[3];
+        copy.columnHit = new int[1];
+        copy.lastOccluder = new int[]{-1};
+        copy.hitInstance = new int[]{-1};
+        return copy;
+    }
+
+    @Override
+    public void run() {
+        int id = getGlobalId();
+        if (adaptive) {
+            if (id < activeCount) {
+                renderPixel(activePixels[id]);
+            }
+        } else if (id < pixels.length) {
+            renderPixel(id);
+        }
+    }
+
+    // Для TileRenderer, который обходит все пиксели плитки: в адаптивном режиме сошедшиеся пропускаются
+    boolean needsSample(int id) {
+        return !adaptive || sampleIndex == 0 || pixelActive[id] > 0;
+    }
+
+    // Один сэмпл пикселя id; этот же код вызывает TileRenderer на чистой Java
+    void renderPixel(int id) {
+        renderPixelFromHit(id, TRACE_PRIMARY);
+    }
+
+    // Сэмпл пикселя, первичный луч которого уже пересечён с фигурой primaryHit (-1 - промах)
+    void renderPixelFromHit(int id, int primaryHit) {
+        int sample = primaryRay(id);
+        float dx = vec[0];
+        float dy = vec[1];
+        float dz = vec[2];
+
+//        traceRayWithSampling(cameraPosition[0], cameraPosition[1], cameraPosition[2], dx, dy, dz, maxReflections, 100, 1);
+        traceRay(cameraPosition[0], cameraPosition[1], cameraPosition[2], dx, dy, dz, maxReflections, 1, primaryHit);
+
+        // Накопление: на экран выводится среднее всех сэмплов пикселя
+        int base = id * 3;
+        float r = vec[0];
+        float g = vec[1];
+        float b = vec[2];
+        float luminance = 0.2126f * r + 0.7152f * g + 0.0722f * b;
+        if (sample > 0) {
+            r += accumulation[base];
+            g += accumulation[base + 1];
+            b += accumulation[base + 2];
+        }
+        accumulation[base] = r;
+        accumulation[base + 1] = g;
+        accumulation[base + 2] = b;
+
+        float scale = 1.0f / (sample + 1);
+        pixels[id] = packColor(r * scale, g * scale, b * scale);
+        rayCounts[id] = rayCounter[0];
+        if (statistics) {
+            recordStatistics(id, sample);
+        }
+
+        if (adaptive) {
+            updateConvergence(id, sample + 1, luminance);
+        }
+    }
+
+    // Направление первичного луча в PacketTracer: lane-й элемент dirX, dirY, dirZ
+    void writePrimaryRay(int id, float[] dirX, float[] dirY, float[] dirZ, int lane) {
+        primaryRay(id);
+        dirX[lane] = vec[0];
+        dirY[lane] = vec[1];
+        dirZ[lane] = vec[2];
+    }
+
+    // Готовит генератор и счётчик лучей пикселя, направление первичного луча записывает в vec; возвращает номер сэмпла
+    private int primaryRay(int id) {
+        int x = id % width;
+        int y = id / width;
+        // В адаптивном режиме у каждого пикселя своё число сэмплов; проход 0 сбрасывает все
+        int sample = adaptive && sampleIndex > 0 ? sampleCounts[id] : sampleIndex;
+
+        // Генератор без общего состояния: поток зависит только от пикселя, сэмпла, кадра и зерна
+        rngState[0] = hash(id ^ hash(sample ^ hash(frameNumber ^ hash(seed))));
+        rayCounter[0] = 0;
+        costCounter[0] = 0;
+        costCounter[1] = 0;
+        costCounter[2] = 0;
+
+        // Первый сэмпл идёт через центр пикселя, последующие - через случайную точку внутри него
+        float offsetX = sample == 0 ? 0.5f : nextRandom();
+        float offsetY = sample == 0 ? 0.5f : nextRandom();
+
+        float aspectRatio = (float) width / height;
+        float px = (2f * (x + offsetX) / width - 1f) * (float) Math.tan(Math.toRadians(fov) / 2) * aspectRatio;
+        float py = (1f - 2f * (y + offsetY) / height) * (float) Math.tan(Math.toRadians(fov) / 2);
+
+        normalize(cameraRight[0] * px + cameraUp[0] * py + cameraDirection[0],
+                cameraRight[1] * px + cameraUp[1] * py + cameraDirection[1],
+                cameraRight[2] * px + cameraUp[2] * py + cameraDirection[2]);
+        return sample;
+    }
+
+    // Счётчики сэмпла добавляются к сумме накопления; первый сэмпл начинает её заново
+    private void recordStatistics(int id, int sample) {
+        int base = id * 3;
+        for (int i = 0; i < 3; i++) {
+            pixelStats[base + i] = (sample > 0 ? pixelStats[base + i] : 0) + costCounter[i];
+        }
+    }
+
+    // Шаг Уэлфорда по яркости сэмпла и решение, нужны ли пикселю ещё сэмплы
+    private void updateConvergence(int id, int count, float luminance) {
+        float mean = count == 1 ? 0 : luminanceMean[id];
+        float m2 = count == 1 ? 0 : luminanceM2[id];
+        float delta = luminance - mean;
+        mean += delta / count;
+        m2 += delta * (luminance - mean);
+        luminanceMean[id] = mean;
+        luminanceM2[id] = m2;
+        sampleCounts[id] = count;
+
+        int active = 1;
+        if (count >= maxSamples) {
+            active = -1;
+        } else if (count >= minSamples && count > 1) {
+            // count > 1 дублирует ограничение minSamples: с одним сэмплом делитель ниже равен нулю
+            // Стандартная ошибка среднего относительно яркости; тёмные пиксели сравниваются с порогом 8 из 255
+            float standardError = (float) Math.sqrt(m2 / ((count - 1) * (float) count));
+            active = standardError > errorThreshold * Math.max(mean, 8.0f) ? 1 : 0;
+        }
+        pixelActive[id] = active;
+    }
+
+    // Одиночные запросы без запуска ядра - для бенчмарков; возвращают t пересечения или -1
+    float intersectOne(int ref, float ox, float oy, float oz, float dx, float dy, float dz) {
+        hitRecord[0] = Float.MAX_VALUE;
+        return intersectShape(ref, ox, oy, oz, dx, dy, dz) ? hitRecord[0] : -1;
+    }
+
+    float closestHit(float ox, float oy, float oz, float dx, float dy, float dz) {
+        int hitShape = findClosestHit(ox, oy, oz, dx, dy, dz);
+        return hitShape < 0 ? -1 : hitRecord[0];
+    }
+
+    boolean shadowRay(float px, float py, float pz, float nx, float ny, float nz) {
+        return isOccluded(px, py, pz, nx, ny, nz, lightPosition[0], lightPosition[1], lightPosition[2]);
+    }
+
+    // Среднее по samplesPerPixel сэмплам записывается в vec
+    private void traceRayWithSampling(float ox, float oy, float oz, float dx, float dy, float dz,
+                                      int remainingBounces, int samplesPerPixel, float currentIntensity) {
+        float r = 0;
+        float g = 0;
+        float b = 0;
+        for (int i = 0; i < samplesPerPixel; i++) {
+            applyJitter(dx, dy, dz); // Случайное смещение
+            traceRay(ox, oy, oz, vec[0], vec[1], vec[2], remainingBounces, currentIntensity, TRACE_PRIMARY);
+            r += vec[0];
+            g += vec[1];
+            b += vec[2];
+        }
+        vec[0] = r / samplesPerPixel;
+        vec[1] = g / samplesPerPixel;
+        vec[2] = b / samplesPerPixel;
+    }
+
+    private void applyJitter(float dx, float dy, float dz) {
+        normalize(dx + randomInRange(-0.001f, 0.001f), dy + randomInRange(-0.001f, 0.001f), dz + randomInRange(-0.001f, 0.001f));
+    }
+
+    private float randomInRange(float min, float max) {
+        return min + nextRandom() * (max - min);
+    }
+
+    // Хеш PCG (RXS-M-XS): перемешивает 32-битное значение для получения зерна
+    private int hash(int input) {
+        int state = input * 747796405 + 0xAC564B05;
+        int word = ((state >>> ((state >>> 28) + 4)) ^ state) * 277803737;
+        return (word >>> 22) ^ word;
+    }
+
+    // Следующее число из [0, 1): шаг LCG по состоянию пикселя и перестановка PCG на выходе
+    private float nextRandom() {
+        int state = rngState[0];
+        rngState[0] = state * 747796405 + 0xAC564B05;
+        int word = ((state >>> ((state >>> 28) + 4)) ^ state) * 277803737;
+        word = (word >>> 22) ^ word;
+        return (word >>> 8) * (1.0f / 16777216.0f);
+    }
+
+    // Итеративный трассировщик пути: вместо рекурсии несём вес пути (throughput) и накопленную яркость.
+    // Рекурсивный вариант смешивал цвет поверхности с отражением как L * (1 - k) + отражение * k,
+    // поэтому каждый отскок добавляет throughput * (1 - k) * L, а throughput умножается на k.
+    // Яркость сэмпла (0..255 на канал) записывается в vec.
+    // primaryHit - уже найденное первое пересечение или TRACE_PRIMARY
+    private void traceRay(float ox, float oy, float oz, float dx, float dy, float dz, int remainingBounces,
+                          float currentIntensity, int primaryHit) {
+        float radianceR = 0;
+        float radianceG = 0;
+        float radianceB = 0;
+        float throughput = 1.0f;
+        boolean active = true;
+
+        while (active && remainingBounces > 0 && currentIntensity >= 0.01f) {
+            int hitShape = primaryHit;
+            if (hitShape == TRACE_PRIMARY) {
+                hitShape = findClosestHit(ox, oy, oz, dx, dy, dz);
+            } else {
+                hitShape = resolveHit(hitShape, ox, oy, oz, dx, dy, dz);
+                hitShape = findClosestInstanceHit(hitShape, ox, oy, oz, dx, dy, dz);
+            }
+            primaryHit = TRACE_PRIMARY;
+            if (hitShape < 0) {
+                active = false; // Нет пересечения - дальше только черный цвет
+            } else {
+                float t = hitRecord[0];
+                float nx = hitRecord[1];
+                float ny = hitRecord[2];
+                float nz = hitRecord[3];
+                float hx = ox + dx * t;
+                float hy = oy + dy * t;
+                float hz = oz + dz * t;
+                int color = calculateColor(hitShape);
+                int materialType = (int) surfaceValue(hitShape, 0);
+
+                if (materialType == 4) { // Эмиттер
+                    radianceR += throughput * ((color >> 16) & 0xFF);
+                    radianceG += throughput * ((color >> 8) & 0xFF);
+                    radianceB += throughput * (color & 0xFF);
+                    active = false;
+                } else if (materialType == 5) { // Стекло
+                    float ior = 1.5f; // Индекс преломления стекла
+                    float eta = 1.0f / ior;
+
+                    float fresnel = 1.0f - Math.abs(dot(-dx, -dy, -dz, nx, ny, nz));
+                    fresnel = fresnel * fresnel; // Усиление эффекта
+
+                    if (nextRandom() < fresnel) {
+                        // Вероятность отражения
+                        reflect(dx, dy, dz, nx, ny, nz);
+                    } else {
+                        // Вероятность преломления
+                        refract(dx, dy, dz, nx, ny, nz, eta);
+                        hx += vec[0] * 1e-4f; // Смещение
+                        hy += vec[1] * 1e-4f;
+                        hz += vec[2] * 1e-4f;
+                    }
+
+                    // Стекло не ослабляет луч: продолжаем путь с тем же весом
+                    ox = hx;
+                    oy = hy;
+                    oz = hz;
+                    dx = vec[0];
+                    dy = vec[1];
+                    dz = vec[2];
+                } else {
+                    float bias = 1e-4f;
+                    hx += nx * bias;
+                    hy += ny * bias;
+                    hz += nz * bias;
+
+                    int lightingColor = shadeSurface(hx, hy, hz, nx, ny, nz, color, currentIntensity);
+
+                    // Отражение
+                    float reflectionIntensity = currentIntensity;
+                    if (materialType == 1) { // Матовый
+                        diffuseReflection(nx, ny, nz); // Новый случайный луч
+                        reflectionIntensity *= 0.3f; // Матовые поверхности уменьшают интенсивность сильнее
+                    } else if (materialType == 2) { // Полу-матовый
+                        reflect(dx, dy, dz, nx, ny, nz);
+                        float rx = vec[0];
+                        float ry = vec[1];
+                        float rz = vec[2];
+                        diffuseReflection(nx, ny, nz);
+                        blendDirections(rx, ry, rz, vec[0], vec[1], vec[2], 0.8f); // Смешиваем отражение и рассеяние
+                        reflectionIntensity *= 0.5f; // Полу-матовые поверхности уменьшают интенсивность меньше
+                    } else if (materialType == 3) { // Глянец
+                        reflect(dx, dy, dz, nx, ny, nz); // Чистое зеркальное отражение
+                        reflectionIntensity *= 0.8f; // Глянцевые поверхности почти не уменьшают интенсивность
+                    } else {
+                        vec[0] = dx;
+                        vec[1] = dy;
+                        vec[2] = dz;
+                    }
+
+                    // Смешиваем базовый цвет и отражение
+                    float surfaceWeight = throughput * (1 - reflectionIntensity);
+                    radianceR += surfaceWeight * ((lightingColor >> 16) & 0xFF);
+                    radianceG += surfaceWeight * ((lightingColor >> 8) & 0xFF);
+                    radianceB += surfaceWeight * (lightingColor & 0xFF);
+                    throughput *= reflectionIntensity;
+                    currentIntensity = reflectionIntensity;
+
+                    ox = hx;
+                    oy = hy;
+                    oz = hz;
+                    dx = vec[0];
+                    dy = vec[1];
+                    dz = vec[2];
+                }
+                remainingBounces--;
+                costCounter[0]++;
+            }
+        }
+
+        vec[0] = radianceR;
+        vec[1] = radianceG;
+        vec[2] = radianceB;
+    }
+
+    // Прямое освещение точки поверхности: диффузный свет, блик, эмиттеры и тень
+    private int shadeSurface(float hx, float hy, float hz, float nx, float ny, float nz, int color, float currentIntensity) {
+        // При большом числе эмиттеров на точку выбирается один, с вероятностью sampledPdf;
+        // по нему же считаются и освещённость, и тень
+        boolean sampled = emitterCount > MAX_EXACT_EMITTERS;
+        int sampledEmitter = 0;
+        float sampledPdf = 1.0f;
+        if (sampled) {
+            sampledEmitter = sampleEmitter(nextRandom());
+            sampledPdf = emitterProbability(sampledEmitter);
+        }
+
+        // Освещение
+        float intensity = calculateLightIntensity(hx, hy, hz, nx, ny, nz, sampledEmitter, sampledPdf);
+        int diffuseColor = applyLighting(color, intensity); // Диффузный свет
+
+        // Вектор направления света
+        normalize(lightPosition[0] - hx, lightPosition[1] - hy, lightPosition[2] - hz);
+        float lx = vec[0];
+        float ly = vec[1];
+        float lz = vec[2];
+
+        // Вектор взгляда (от точки к камере)
+        normalize(cameraPosition[0] - hx, cameraPosition[1] - hy, cameraPosition[2] - hz);
+
+        // Рассчёт бликов
+        float specular = calculateSpecular(lx, ly, lz, nx, ny, nz, vec[0], vec[1], vec[2], 50.0f); // Shininess = 50.0f
+
+        // Смешиваем диффузное освещение с бликами
+        int lightingColor = blendColors(diffuseColor,
+                convertColorToInt(lightColor[0] * specular, lightColor[1] * specular, lightColor[2] * specular), 0.5f);
+
+        // Только настоящие эмиттеры из таблицы; при большом их числе - выбранный выше с весом 1/p
+        int lightCount = sampled ? 1 : emitterCount;
+        for (int i = 0; i < lightCount; i++) {
+            int emitter = sampled ? sampledEmitter : i;
+            float weight = 1.0f / sampledPdf;
+            int base = emitter * SceneBuffer.EMITTER_STRIDE;
+            float ex = emitters[base];
+            float ey = emitters[base + 1];
+            float ez = emitters[base + 2];
+
+            if (!isOccluded(hx, hy, hz, nx, ny, nz, ex, ey, ez)) {
+                float emitterContribution = calculateLightFromEmitter(hx, hy, hz, ex, ey, ez, currentIntensity * emitterIntensity * weight, nx, ny, nz);
+                lightingColor = blendColors(lightingColor, scaleColor(color, emitterContribution), Math.min(1.0f, emitterContribution));
+            }
+            else {
+                // Если эмиттер перекрыт объектом, уменьшаем вклад освещения
+                lightingColor = darkenColor(lightingColor, 0.5f);
+            }
+        }
+
+        // Проверка на наличие теней
+        if (isOccluded(hx, hy, hz, nx, ny, nz, lightPosition[0], lightPosition[1], lightPosition[2])) {
+            lightingColor = darkenColor(lightingColor, 0.5f); // Уменьшаем яркость в 2 раза
+        }
+        return lightingColor;
+    }
+
+    private int packColor(float red, float green, float blue) {
+        int r = (int) Math.min(255.0f, Math.max(0.0f, red));
+        int g = (int) Math.min(255.0f, Math.max(0.0f, green));
+        int b = (int) Math.min(255.0f, Math.max(0.0f, blue));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    // Поле записи фигуры по ссылке; заголовок у всех типов одинаковый
+    private float shapeValue(int ref, int field) {
+        int offset = (ref >> 1) + field;
+        return (ref & 1) == 0 ? boxes[offset] : spheres[offset];
+    }
+
+    private float prototypeValue(int ref, int field) {
+        int offset = (ref >> 1) + field;
+        return (ref & 1) == 0 ? prototypeBoxes[offset] : prototypeSpheres[offset];
+    }
+
+    // Материал (field 0) или цвет (1..3) ближайшего попадания: у фигуры экземпляра - замена из записи
+    // экземпляра, если она задана, иначе значение из записи фигуры прототипа
+    private float surfaceValue(int ref, int field) {
+        int instance = hitInstance[0];
+        float value = 0;
+        if (instance < 0) {
+            value = shapeValue(ref, field);
+        } else if (field == 0) {
+            value = instances[instance] != 0 ? instances[instance] : prototypeValue(ref, 0);
+        } else {
+            value = instances[instance + 1] >= 0 ? instances[instance + field] : prototypeValue(ref, field);
+        }
+        return value;
+    }
+
+    // Индекс эмиттера по равномерному u: бинарный поиск по накопленной мощности
+    private int sampleEmitter(float u) {
+        int low = 0;
+        int high = emitterCount - 1;
+        while (low < high) {
+            int middle = (low + high) >> 1;
+            if (emitterCdf[middle] > u) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private float emitterProbability(int emitter) {
+        return emitter == 0 ? emitterCdf[0] : emitterCdf[emitter] - emitterCdf[emitter - 1];
+    }
+
+    // Ближайшее пересечение записывается в hitRecord; возвращает ссылку на фигуру или -1.
+    // Ссылка на фигуру прототипа, если ближе всего экземпляр (см. hitInstance)
+    private int findClosestHit(float ox, float oy, float oz, float dx, float dy, float dz) {
+        columnHit[0] = TRACE_PRIMARY;
+        findClosestHitColumns(ox, oy, oz, dx, dy, dz);
+        int hitShape = columnHit[0];
+        if (hitShape == TRACE_PRIMARY) {
+            hitShape = useBvh ? findClosestHitBvh(ox, oy, oz, dx, dy, dz) : findClosestHitLinear(ox, oy, oz, dx, dy, dz);
+        } else {
+            hitShape = resolveHit(hitShape, ox, oy, oz, dx, dy, dz);
+        }
+        return findClosestInstanceHit(hitShape, ox, oy, oz, dx, dy, dz);
+    }
+
+    // Вызова нет в OpenCL: там columnHit остаётся TRACE_PRIMARY и работает обычный обход
+    @NoCL
+    private void findClosestHitColumns(float ox, float oy, float oz, float dx, float dy, float dz) {
+        if (columns != null) {
+            columnHit[0] = columns.closestHit(ox, oy, oz, dx, dy, dz);
+            costCounter[1] += columns.getColumnCount();
+        }
+    }
+
+    // Фигура уже выбрана (пакетом или перебором столбцов): t и нормаль даёт повторная проверка её одной.
+    // Возвращает hitShape или -1, если повторная проверка промахнулась
+    private int resolveHit(int hitShape, float ox, float oy, float oz, float dx, float dy, float dz) {
+        rayCounter[0]++;
+        hitRecord[0] = Float.MAX_VALUE;
+        int resolved = -1;
+        if (hitShape >= 0) {
+            costCounter[1]++;
+            if (intersectShape(hitShape, ox, oy, oz, dx, dy, dz)) {
+                resolved = hitShape;
+            }
+        }
+        return resolved;
+    }
+
+    // Массивы однородны по типу, поэтому в циклах нет ветвления по типу фигуры
+    private int findClosestHitLinear(float ox, float oy, float oz, float dx, float dy, float dz) {
+        rayCounter[0]++;
+        costCounter[1] += boxes.length / Parallelepiped.GPU_STRIDE + spheres.length / Sphere.GPU_STRIDE;
+        int hitShape = -1;
+        hitRecord[0] = Float.MAX_VALUE;
+        for (int i = 0; i < boxes.length; i += Parallelepiped.GPU_STRIDE) {
+            if (intersectBox(boxes, i, ox, oy, oz, dx, dy, dz)) {
+                hitShape = i << 1;
+            }
+        }
+        for (int i = 0; i < spheres.length; i += Sphere.GPU_STRIDE) {
+            if (intersectSphere(spheres, i, ox, oy, oz, dx, dy, dz)) {
+                hitShape = (i << 1) | 1;
+            }
+        }
+        return hitShape;
+    }
+
+    private int findClosestHitBvh(float ox, float oy, float oz, float dx, float dy, float dz) {
+        rayCounter[0]++;
+        hitRecord[0] = Float.MAX_VALUE;
+        return findClosestInTree(bvhNodeBounds, bvhNodeLinks, bvhPrimitives, boxes, spheres, 0, ox, oy, oz, dx, dy, dz);
+    }
+
+    // Ближайшее пересечение ближе hitRecord[0] в дереве с корнем root: BVH сцены или прототипа вместе
+    // с массивами записей его фигур. Возвращает ссылку на фигуру или -1
+    private int findClosestInTree(float[] nodeBounds, int[] nodeLinks, int[] primitives, float[] boxData, float[] sphereData,
+                                  int root, float ox, float oy, float oz, float dx, float dy, float dz) {
+        int hitShape = -1;
+        float invX = 1.0f / dx;
+        float invY = 1.0f / dy;
+        float invZ = 1.0f / dz;
+
+        int tests = 0;  // Проверки узлов и фигур для статистики
+        int stackSize = 1;
+        traversalStack[0] = root;
+        while (stackSize > 0) {
+            stackSize--;
+            int node = traversalStack[stackSize];
+            tests++;
+            if (intersectNodeBounds(nodeBounds, node, ox, oy, oz, invX, invY, invZ, hitRecord[0]) >= 0) {
+                int first = nodeLinks[node * 2];
+                int count = nodeLinks[node * 2 + 1];
+                tests += count > 0 ? count : 2;
+                if (count > 0) { // Лист
+                    for (int i = first; i < first + count; i++) {
+                        if (intersectRecord(boxData, sphereData, primitives[i], ox, oy, oz, dx, dy, dz)) {
+                            hitShape = primitives[i];
+                        }
+                    }
+                } else {
+                    // Ближний потомок кладём последним, чтобы обойти его первым
+                    float tLeft = intersectNodeBounds(nodeBounds, first, ox, oy, oz, invX, invY, invZ, hitRecord[0]);
+                    float tRight = intersectNodeBounds(nodeBounds, first + 1, ox, oy, oz, invX, invY, invZ, hitRecord[0]);
+                    if (tLeft >= 0 && tRight >= 0) {
+                        int near = tLeft <= tRight ? first : first + 1;
+                        traversalStack[stackSize] = tLeft <= tRight ? first + 1 : first;
+                        traversalStack[stackSize + 1] = near;
+                        stackSize += 2;
+                    } else if (tLeft >= 0 || tRight >= 0) {
+                        traversalStack[stackSize] = tLeft >= 0 ? first : first + 1;
+                        stackSize++;
+                    }
+                }
+            }
+        }
+        costCounter[1] += tests;
+        return hitShape;
+    }
+
+    // Второй уровень: дерево над экземплярами, в листе луч переводится в координаты прототипа и обходит
+    // его дерево. Направление не нормируется, поэтому t в координатах прототипа то же, что в мировых,
+    // и hitRecord[0] общий для обоих уровней. Возвращает hitShape или ссылку на фигуру прототипа,
+    // если экземпляр ближе, - тогда смещение его записи остаётся в hitInstance
+    private int findClosestInstanceHit(int hitShape, float ox, float oy, float oz, float dx, float dy, float dz) {
+        hitInstance[0] = -1;
+        int closest = hitShape;
+        if (instanceCount > 0) {
+            float invX = 1.0f / dx;
+            float invY = 1.0f / dy;
+            float invZ = 1.0f / dz;
+            int tests = 0;
+            int stackSize = 1;
+            instanceStack[0] = 0;
+            while (stackSize > 0) {
+                stackSize--;
+                int node = instanceStack[stackSize];
+                tests++;
+                if (intersectNodeBounds(instanceNodeBounds, node, ox, oy, oz, invX, invY, invZ, hitRecord[0]) >= 0) {
+                    int first = instanceNodeLinks[node * 2];
+                    int count = instanceNodeLinks[node * 2 + 1];
+                    tests += count > 0 ? count : 2;
+                    if (count > 0) {
+                        for (int i = first; i < first + count; i++) {
+                            int prototypeHit = intersectInstance(instancePrimitives[i], ox, oy, oz, dx, dy, dz);
+                            if (prototypeHit >= 0) {
+                                closest = prototypeHit;
+                                hitInstance[0] = instancePrimitives[i];
+                            }
+                        }
+                    } else {
+                        float tLeft = intersectNodeBounds(instanceNodeBounds, first, ox, oy, oz, invX, invY, invZ, hitRecord[0]);
+                        float tRight = intersectNodeBounds(instanceNodeBounds, first + 1, ox, oy, oz, invX, invY, invZ, hitRecord[0]);
+                        if (tLeft >= 0 && tRight >= 0) {
+                            int near = tLeft <= tRight ? first : first + 1;
+                            instanceStack[stackSize] = tLeft <= tRight ? first + 1 : first;
+                            instanceStack[stackSize + 1] = near;
+                            stackSize += 2;
+                        } else if (tLeft >= 0 || tRight >= 0) {
+                            instanceStack[stackSize] = tLeft >= 0 ? first : first + 1;
+                            stackSize++;
+                        }
+                    }
+                }
+            }
+            costCounter[1] += tests;
+        }
+        return closest;
+    }
+
+    // Ближайшее пересечение с фигурами экземпляра ближе hitRecord[0]; при попадании нормаль в hitRecord
+    // возвращается в мировые координаты. Возвращает ссылку на фигуру прототипа или -1
+    private int intersectInstance(int instance, float ox, float oy, float oz, float dx, float dy, float dz) {
+        float px = ox - instances[instance + 4];
+        float py = oy - instances[instance + 5];
+        float pz = oz - instances[instance + 6];
+        int hitShape = findClosestInTree(prototypeNodeBounds, prototypeNodeLinks, prototypePrimitives,
+                prototypeBoxes, prototypeSpheres, (int) instances[instance + 13],
+                instances[instance + 14] * px + instances[instance + 15] * py + instances[instance + 16] * pz,
+                instances[instance + 17] * px + instances[instance + 18] * py + instances[instance + 19] * pz,
+                instances[instance + 20] * px + instances[instance + 21] * py + instances[instance + 22] * pz,
+                instances[instance + 14] * dx + instances[instance + 15] * dy + instances[instance + 16] * dz,
+                instances[instance + 17] * dx + instances[instance + 18] * dy + instances[instance + 19] * dz,
+                instances[instance + 20] * dx + instances[instance + 21] * dy + instances[instance + 22] * dz);
+        if (hitShape >= 0) {
+            // Обратный переход - транспонированная матрица, умноженная на масштаб: длина нормали не меняется
+            float nx = hitRecord[1];
+            float ny = hitRecord[2];
+            float nz = hitRecord[3];
+            float scale = instances[instance + 23];
+            hitRecord[1] = scale * (instances[instance + 14] * nx + instances[instance + 17] * ny + instances[instance + 20] * nz);
+            hitRecord[2] = scale * (instances[instance + 15] * nx + instances[instance + 18] * ny + instances[instance + 21] * nz);
+            hitRecord[3] = scale * (instances[instance + 16] * nx + instances[instance + 19] * ny + instances[instance + 22] * nz);
+        }
+        return hitShape;
+    }
+
+    // Расстояние входа луча в границы узла дерева nodeBounds или -1, если узел не пересечён ближе maxDistance
+    private float intersectNodeBounds(float[] nodeBounds, int node, float ox, float oy, float oz,
+                                      float invX, float invY, float invZ, float maxDistance) {
+        int base = node * 6;
+        float tx0 = (nodeBounds[base] - ox) * invX;
+        float tx1 = (nodeBounds[base + 3] - ox) * invX;
+        float ty0 = (nodeBounds[base + 1] - oy) * invY;
+        float ty1 = (nodeBounds[base + 4] - oy) * invY;
+        float tz0 = (nodeBounds[base + 2] - oz) * invZ;
+        float tz1 = (nodeBounds[base + 5] - oz) * invZ;
+
+        float tNear = Math.max(Math.max(Math.min(tx0, tx1), Math.min(ty0, ty1)), Math.max(Math.min(tz0, tz1), 0.0f));
+        float tFar = Math.min(Math.min(Math.max(tx0, tx1), Math.max(ty0, ty1)), Math.min(Math.max(tz0, tz1), maxDistance));
+        return tNear <= tFar ? tNear : -1.0f;
+    }
+
+    // Пересечение с одной фигурой сцены; при попадании ближе hitRecord[0] обновляет hitRecord и возвращает true
+    private boolean intersectShape(int ref, float ox, float oy, float oz, float dx, float dy, float dz) {
+        return intersectRecord(boxes, spheres, ref, ox, oy, oz, dx, dy, dz);
+    }
+
+    // То же для записей из boxData и sphereData: сцены или прототипов
+    private boolean intersectRecord(float[] boxData, float[] sphereData, int ref,
+                                    float ox, float oy, float oz, float dx, float dy, float dz) {
+        return (ref & 1) == 0
+                ? intersectBox(boxData, ref >> 1, ox, oy, oz, dx, dy, dz)
+                : intersectSphere(sphereData, ref >> 1, ox, oy, oz, dx, dy, dz);
+    }
+
+    // Слэбы ориентированного параллелепипеда: луч переводится в его локальные координаты
+    // заранее посчитанной обратной ориентацией, где параллелепипед - это [-half, half] по каждой оси
+    private boolean intersectBox(float[] data, int offset, float ox, float oy, float oz, float dx, float dy, float dz) {
+        float px = ox - data[offset + 4];
+        float py = oy - data[offset + 5];
+        float pz = oz - data[offset + 6];
+        float lox = data[offset + 16] * px + data[offset + 17] * py + data[offset + 18] * pz;
+        float loy = data[offset + 19] * px + data[offset + 20] * py + data[offset + 21] * pz;
+        float loz = data[offset + 22] * px + data[offset + 23] * py + data[offset + 24] * pz;
+        float ldx = data[offset + 16] * dx + data[offset + 17] * dy + data[offset + 18] * dz;
+        float ldy = data[offset + 19] * dx + data[offset + 20] * dy + data[offset + 21] * dz;
+        float ldz = data[offset + 22] * dx + data[offset + 23] * dy + data[offset + 24] * dz;
+        float halfX = data[offset + 13];
+        float halfY = data[offset + 14];
+        float halfZ = data[offset + 15];
+
+        float invX = 1.0f / ldx;
+        float invY = 1.0f / ldy;
+        float invZ = 1.0f / ldz;
+        float tx0 = (-halfX - lox) * invX;
+        float tx1 = (halfX - lox) * invX;
+        float ty0 = (-halfY - loy) * invY;
+        float ty1 = (halfY - loy) * invY;
+        float tz0 = (-halfZ - loz) * invZ;
+        float tz1 = (halfZ - loz) * invZ;
+        float nearX = Math.min(tx0, tx1);
+        float nearY = Math.min(ty0, ty1);
+        float nearZ = Math.min(tz0, tz1);
+        float tMin = Math.max(Math.max(nearX, nearY), nearZ);
+        float tMax = Math.min(Math.min(Math.max(tx0, tx1), Math.max(ty0, ty1)), Math.max(tz0, tz1));
+
+        // Условие записано через попадание: NaN (луч по плоскости грани, 0 * inf) должен давать промах
+        if (!(tMax > tMin && tMin > 0 && tMin < hitRecord[0])) {
+            return false;
+        }
+
+        // Нормаль - ось грани входа со знаком против направления луча
+        int axis = tMin == nearX ? 0 : (tMin == nearY ? 1 : 2);
+        float d = axis == 0 ? ldx : (axis == 1 ? ldy : ldz);
+        float sign = d > 0 ? -1.0f : 1.0f;
+        int row = offset + 16 + axis * 3;
+        hitRecord[0] = tMin;
+        hitRecord[1] = sign * data[row];
+        hitRecord[2] = sign * data[row + 1];
+        hitRecord[3] = sign * data[row + 2];
+        return true;
+    }
+
+    private boolean intersectSphere(float[] data, int offset, float ox, float oy, float oz, float dx, float dy, float dz) {
+        float ocx = ox - data[offset + 4];
+        float ocy = oy - data[offset + 5];
+        float ocz = oz - data[offset + 6];
+
+        float a = dot(dx, dy, dz, dx, dy, dz);
+        float b = 2.0f * dot(ocx, ocy, ocz, dx, dy, dz);
+        float c = dot(ocx, ocy, ocz, ocx, ocy, ocz) - data[offset + 14];
+
+        float discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) return false;
+
+        float t = (-b - (float) Math.sqrt(discriminant)) / (2.0f * a);
+        if (t <= 0 || t >= hitRecord[0]) {
+            return false;
+        }
+        float radius = data[offset + 13];
+        hitRecord[0] = t;
+        hitRecord[1] = (ocx + dx * t) / radius;
+        hitRecord[2] = (ocy + dy * t) / radius;
+        hitRecord[3] = (ocz + dz * t) / radius;
+        return true;
+    }
+
+    private int blendColors(int color1, int color2, float ratio) {
+        int r1 = (color1 >> 16) & 0xFF;
+        int g1 = (color1 >> 8) & 0xFF;
+        int b1 = color1 & 0xFF;
+
+        int r2 = (color2 >> 16) & 0xFF;
+        int g2 = (color2 >> 8) & 0xFF;
+        int b2 = color2 & 0xFF;
+
+        int r = (int) (r1 * (1 - ratio) + r2 * ratio);
+        int g = (int) (g1 * (1 - ratio) + g2 * ratio);
+        int b = (int) (b1 * (1 - ratio) + b2 * ratio);
+
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private int scaleColor(int color, float intensity) {
+        int r = (int) Math.min(255, ((color >> 16) & 0xFF) * intensity);
+        int g = (int) Math.min(255, ((color >> 8) & 0xFF) * intensity);
+        int b = (int) Math.min(255, (color & 0xFF) * intensity);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private float calculateLightFromEmitter(float px, float py, float pz, float ex, float ey, float ez,
+                                            float intensity, float nx, float ny, float nz) {
+        float lx = ex - px;
+        float ly = ey - py;
+        float lz = ez - pz;
+        float distanceSquared = dot(lx, ly, lz, lx, ly, lz);
+        float distance = (float) Math.sqrt(distanceSquared);
+        float attenuation = intensity / (4 * (float) Math.PI * distanceSquared);
+        return attenuation * Math.max(0, dot(nx, ny, nz, lx / distance, ly / distance, lz / distance));
+    }
+
+    // sampledEmitter и sampledPdf - выбор shadeSurface; используются, только если эмиттеров больше MAX_EXACT_EMITTERS
+    private float calculateLightIntensity(float px, float py, float pz, float nx, float ny, float nz,
+                                          int sampledEmitter, float sampledPdf) {
+        normalize(lightPosition[0] - px, lightPosition[1] - py, lightPosition[2] - pz);
+        float totalIntensity = Math.max(0, dot(nx, ny, nz, vec[0], vec[1], vec[2]));
+        boolean sampled = emitterCount > MAX_EXACT_EMITTERS;
+        int lightCount = sampled ? 1 : emitterCount;
+        for (int i = 0; i < lightCount; i++) {
+            int emitter = sampled ? sampledEmitter : i;
+            float intensity = emitterIntensity / sampledPdf; // Интенсивность эмиттера
+            int base = emitter * SceneBuffer.EMITTER_STRIDE;
+            totalIntensity += calculateLightFromEmitter(px, py, pz, emitters[base], emitters[base + 1], emitters[base + 2], intensity, nx, ny, nz);
+        }
+        return totalIntensity; // Ограничиваем интенсивность в пределах [0, 1]
+    }
+
+    private int calculateColor(int ref) {
+        int r = (int) (surfaceValue(ref, 1) * 255);
+        int g = (int) (surfaceValue(ref, 2) * 255);
+        int b = (int) (surfaceValue(ref, 3) * 255);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private int applyLighting(int baseColor, float intensity) {
+        int r = (int) ((baseColor >> 16 & 0xFF) * intensity);
+        int g = (int) ((baseColor >> 8 & 0xFF) * intensity);
+        int b = (int) ((baseColor & 0xFF) * intensity);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    // Теневой запрос: загорожен ли отрезок от точки p (смещённой вдоль нормали n) до цели (tx, ty, tz).
+    // Достаточно любого попадания ближе цели; первым проверяется последний найденный загораживающий объект -
+    // у соседних пикселей и соседних отскоков он обычно общий
+    private boolean isOccluded(float px, float py, float pz, float nx, float ny, float nz, float tx, float ty, float tz) {
+        rayCounter[0]++;
+        costCounter[2]++;
+        float bias = 1e-4f;
+        float sx = px + nx * bias;
+        float sy = py + ny * bias;
+        float sz = pz + nz * bias;
+        float lx = tx - sx;
+        float ly = ty - sy;
+        float lz = tz - sz;
+        float distance = (float) Math.sqrt(dot(lx, ly, lz, lx, ly, lz));
+        lx /= distance;
+        ly /= distance;
+        lz /= distance;
+        float maxDistance = distance - bias;
+
+        boolean occluded = false;
+        int tests = 0;  // Проверки узлов и фигур для статистики
+        int cached = lastOccluder[0];
+        if (isValidReference(cached)) {
+            occluded = isOccluder(cached, sx, sy, sz, lx, ly, lz, maxDistance);
+            tests++;
+        }
+
+        if (!occluded && !useBvh) {
+            for (int i = 0; i < boxes.length && !occluded; i += Parallelepiped.GPU_STRIDE) {
+                tests++;
+                occluded = isOccluder(i << 1, sx, sy, sz, lx, ly, lz, maxDistance);
+                if (occluded) {
+                    lastOccluder[0] = i << 1;
+                }
+            }
+            for (int i = 0; i < spheres.length && !occluded; i += Sphere.GPU_STRIDE) {
+                tests++;
+                occluded = isOccluder((i << 1) | 1, sx, sy, sz, lx, ly, lz, maxDistance);
+                if (occluded) {
+                    lastOccluder[0] = (i << 1) | 1;
+                }
+            }
+        }
+
+        if (!occluded && useBvh) {
+            float invX = 1.0f / lx;
+            float invY = 1.0f / ly;
+            float invZ = 1.0f / lz;
+            int stackSize = 1;
+            traversalStack[0] = 0;
+            while (stackSize > 0 && !occluded) {
+                stackSize--;
+                int node = traversalStack[stackSize];
+                tests++;
+                if (intersectNodeBounds(bvhNodeBounds, node, sx, sy, sz, invX, invY, invZ, maxDistance) >= 0) {
+                    int first = bvhNodeLinks[node * 2];
+                    int count = bvhNodeLinks[node * 2 + 1];
+                    if (count > 0) {
+                        for (int i = first; i < first + count && !occluded; i++) {
+                            tests++;
+                            occluded = isOccluder(bvhPrimitives[i], sx, sy, sz, lx, ly, lz, maxDistance);
+                            if (occluded) {
+                                lastOccluder[0] = bvhPrimitives[i];
+                            }
+                        }
+                    } else {
+                        traversalStack[stackSize] = first + 1;
+                        traversalStack[stackSize + 1] = first;
+                        stackSize += 2;
+                    }
+                }
+            }
+        }
+        costCounter[1] += tests;
+        return occluded || isOccludedByInstances(sx, sy, sz, lx, ly, lz, maxDistance);
+    }
+
+    // Теневой луч против экземпляров: достаточно любого попадания ближе maxDistance
+    private boolean isOccludedByInstances(float sx, float sy, float sz, float lx, float ly, float lz, float maxDistance) {
+        boolean occluded = false;
+        if (instanceCount > 0) {
+            float invX = 1.0f / lx;
+            float invY = 1.0f / ly;
+            float invZ = 1.0f / lz;
+            int tests = 0;
+            int stackSize = 1;
+            instanceStack[0] = 0;
+            while (stackSize > 0 && !occluded) {
+                stackSize--;
+                int node = instanceStack[stackSize];
+                tests++;
+                if (intersectNodeBounds(instanceNodeBounds, node, sx, sy, sz, invX, invY, invZ, maxDistance) >= 0) {
+                    int first = instanceNodeLinks[node * 2];
+                    int count = instanceNodeLinks[node * 2 + 1];
+                    if (count > 0) {
+                        for (int i = first; i < first + count && !occluded; i++) {
+                            tests++;
+                            occluded = isInstanceOccluder(instancePrimitives[i], sx, sy, sz, lx, ly, lz, maxDistance);
+                        }
+                    } else {
+                        instanceStack[stackSize] = first + 1;
+                        instanceStack[stackSize + 1] = first;
+                        stackSize += 2;
+                    }
+                }
+            }
+            costCounter[1] += tests;
+        }
+        return occluded;
+    }
+
+    // Попадание в фигуру экземпляра на отрезке (0, maxDistance). Эмиттеры тень не отбрасывают:
+    // материал берётся из замены в записи экземпляра или из записи фигуры прототипа
+    private boolean isInstanceOccluder(int instance, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        int material = (int) instances[instance];
+        boolean occluded = false;
+        if (material != 4) {
+            float px = ox - instances[instance + 4];
+            float py = oy - instances[instance + 5];
+            float pz = oz - instances[instance + 6];
+            float lox = instances[instance + 14] * px + instances[instance + 15] * py + instances[instance + 16] * pz;
+            float loy = instances[instance + 17] * px + instances[instance + 18] * py + instances[instance + 19] * pz;
+            float loz = instances[instance + 20] * px + instances[instance + 21] * py + instances[instance + 22] * pz;
+            float ldx = instances[instance + 14] * dx + instances[instance + 15] * dy + instances[instance + 16] * dz;
+            float ldy = instances[instance + 17] * dx + instances[instance + 18] * dy + instances[instance + 19] * dz;
+            float ldz = instances[instance + 20] * dx + instances[instance + 21] * dy + instances[instance + 22] * dz;
+            float invX = 1.0f / ldx;
+            float invY = 1.0f / ldy;
+            float invZ = 1.0f / ldz;
+            int tests = 0;
+            int stackSize = 1;
+            traversalStack[0] = (int) instances[instance + 13];
+            while (stackSize > 0 && !occluded) {
+                stackSize--;
+                int node = traversalStack[stackSize];
+                tests++;
+                if (intersectNodeBounds(prototypeNodeBounds, node, lox, loy, loz, invX, invY, invZ, maxDistance) >= 0) {
+                    int first = prototypeNodeLinks[node * 2];
+                    int count = prototypeNodeLinks[node * 2 + 1];
+                    if (count > 0) {
+                        for (int i = first; i < first + count && !occluded; i++) {
+                            tests++;
+                            int ref = prototypePrimitives[i];
+                            hitRecord[0] = maxDistance;
+                            occluded = (material != 0 || (int) prototypeValue(ref, 0) != 4)
+                                    && intersectRecord(prototypeBoxes, prototypeSpheres, ref, lox, loy, loz, ldx, ldy, ldz);
+                        }
+                    } else {
+                        traversalStack[stackSize] = first + 1;
+                        traversalStack[stackSize + 1] = first;
+                        stackSize += 2;
+                    }
+                }
+            }
+            costCounter[1] += tests;
+        }
+        return occluded;
+    }
+
+    // Кэш в private memory на GPU не инициализирован, а сцена могла смениться: проверяем, что ссылка
+    // указывает на начало записи внутри массива своего типа
+    private boolean isValidReference(int ref) {
+        int offset = ref >> 1;
+        boolean box = (ref & 1) == 0;
+        int stride = box ? Parallelepiped.GPU_STRIDE : Sphere.GPU_STRIDE;
+        int length = box ? boxes.length : spheres.length;
+        return ref >= 0 && offset < length && offset % stride == 0;
+    }
+
+    // Попадание в фигуру на отрезке (0, maxDistance)
+    private boolean isOccluder(int ref, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        hitRecord[0] = maxDistance;
+        // Эмиттеры тень не отбрасывают
+        return (int) shapeValue(ref, 0) != 4 && intersectShape(ref, ox, oy, oz, dx, dy, dz);
+    }
+
+    private int darkenColor(int color, float factor) {
+        int r = (int) ((color >> 16 & 0xFF) * factor);
+        int g = (int) ((color >> 8 & 0xFF) * factor);
+        int b = (int) ((color & 0xFF) * factor);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private float dot(float ax, float ay, float az, float bx, float by, float bz) {
+        return ax * bx + ay * by + az * bz;
+    }
+
+    // Векторные функции ниже записывают результат в vec
+    private void normalize(float x, float y, float z) {
+        float len = (float) Math.sqrt(x * x + y * y + z * z);
+        vec[0] = x / len;
+        vec[1] = y / len;
+        vec[2] = z / len;
+    }
+
+    private void reflect(float dx, float dy, float dz, float nx, float ny, float nz) {
+        float dotProduct = 2 * dot(dx, dy, dz, nx, ny, nz);
+        vec[0] = dx - nx * dotProduct;
+        vec[1] = dy - ny * dotProduct;
+        vec[2] = dz - nz * dotProduct;
+    }
+
+    private void refract(float dx, float dy, float dz, float nx, float ny, float nz, float eta) {
+        float dotNR = dot(nx, ny, nz, dx, dy, dz);
+        float k = 1.0f - eta * eta * (1.0f - dotNR * dotNR);
+        if (k < 0.0f) {
+            vec[0] = 0; // Полное внутреннее отражение
+            vec[1] = 0;
+            vec[2] = 0;
+            return;
+        }
+        float scale = eta * dotNR + (float) Math.sqrt(k);
+        vec[0] = dx * eta - nx * scale;
+        vec[1] = dy * eta - ny * scale;
+        vec[2] = dz * eta - nz * scale;
+    }
+
+    private float calculateFresnel(float ix, float iy, float iz, float nx, float ny, float nz, float ior1, float ior2) {
+        float cosi = Math.max(-1.0f, Math.min(1.0f, dot(ix, iy, iz, nx, ny, nz)));
+        float etai = ior1, etat = ior2;
+        if (cosi > 0) {
+            float temp = etai;
+            etai = etat;
+            etat = temp;
+        }
+        float sint = etai / etat * (float) Math.sqrt(Math.max(0.0f, 1 - cosi * cosi));
+        if (sint >= 1.0f) {
+            return 1.0f; // Полное внутреннее отражение
+        }
+        float cost = (float) Math.sqrt(Math.max(0.0f, 1 - sint * sint));
+        cosi = Math.abs(cosi);
+        float Rs = ((etat * cosi) - (etai * cost)) / ((etat * cosi) + (etai * cost));
+        float Rp = ((etai * cosi) - (etat * cost)) / ((etai * cosi) + (etat * cost));
+        return (Rs * Rs + Rp * Rp) / 2.0f;
+    }
+
+    private void diffuseReflection(float nx, float ny, float nz) {
+        randomUnitVector();
+        float rx = vec[0];
+        float ry = vec[1];
+        float rz = vec[2];
+        if (dot(rx, ry, rz, nx, ny, nz) < 0) {
+            rx = -rx;
+            ry = -ry;
+            rz = -rz;
+        }
+        normalize(nx + rx, ny + ry, nz + rz);
+    }
+
+    private void blendDirections(float rx, float ry, float rz, float sx, float sy, float sz, float ratio) {
+        // Нормализуем направления
+        normalize(rx, ry, rz);
+        rx = vec[0];
+        ry = vec[1];
+        rz = vec[2];
+        normalize(sx, sy, sz);
+
+        // Смешиваем направления в заданной пропорции
+        normalize(rx * ratio + vec[0] * (1 - ratio),
+                ry * ratio + vec[1] * (1 - ratio),
+                rz * ratio + vec[2] * (1 - ratio));
+    }
+
+    private void randomUnitVector() {
+        float z = nextRandom() * 2 - 1;
+        float theta = nextRandom() * 2 * (float) Math.PI;
+        float r = (float) Math.sqrt(1 - z * z);
+        vec[0] = r * (float) Math.cos(theta);
+        vec[1] = r * (float) Math.sin(theta);
+        vec[2] = z;
+    }
+
+    // Интенсивность блика; цвет блика - lightColor, умноженный на неё
+    float calculateSpecular(float lx, float ly, float lz, float nx, float ny, float nz,
+                            float vx, float vy, float vz, float shininess) {
+        reflect(-lx, -ly, -lz, nx, ny, nz);
+        float cosTheta = Math.max(0.0f, dot(vx, vy, vz, vec[0], vec[1], vec[2]));
+        return (float) Math.pow(cosTheta, shininess);
+    }
+
+    private int convertColorToInt(float red, float green, float blue) {
+        int r = (int) (red * 255);
+        int g = (int) (green * 255);
+        int b = (int) (blue * 255);
+        return (r << 16) | (g << 8) | b;
+    }
+}
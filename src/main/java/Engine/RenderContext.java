@@ -0,0 +1,392 @@
+package Engine;
+
+import Drawable.Vector3;
+import com.aparapi.Range;
+import com.aparapi.device.Device;
+import com.aparapi.device.JavaDevice;
+
+import java.util.function.BooleanSupplier;
+
+// Долгоживущий контекст рендеринга: одно ядро и одни и те же буферы на все кадры
+public class RenderContext {
+    public enum Backend {
+        APARAPI,  // RayTracingKernel.execute: OpenCL или запасной режим Aparapi (JTP)
+        TILES,    // TileRenderer: плитки на ForkJoinPool, тот же код трассировки
+        PACKETS   // TileRenderer с пакетной трассировкой первичных лучей (Vector API)
+    }
+
+    // Параметры ядра, общие с воркерами распределённого рендера (RenderJob)
+    static final float[] LIGHT_POSITION = {20, 30, -30};  // Положение источника света
+    static final int MAX_REFLECTIONS = 10;
+    static final int EMITTER_INTENSITY = 10;
+    // -Drender.linearScan=true возвращает перебор всех фигур без BVH (для сравнения)
+    static final boolean USE_BVH = !Boolean.getBoolean("render.linearScan");
+    // Прогрессивный режим: пока камера и сцена неподвижны, каждый кадр добавляет сэмпл к накопленным
+    private static final boolean PROGRESSIVE = Boolean.parseBoolean(System.getProperty("render.progressive", "true"));
+    private static final int MAX_SAMPLES = Integer.getInteger("render.maxSamples", 256);
+    private static final int DEFAULT_SEED = Integer.getInteger("render.seed", 0);
+    // -Drender.adaptive=true: сэмплы достаются только шумным пикселям, пока не исчерпан бюджет adaptiveSpp
+    private static final boolean ADAPTIVE = Boolean.getBoolean("render.adaptive");
+    private static final int ADAPTIVE_SPP = Integer.getInteger("render.adaptiveSpp", 64);
+    private static final int ADAPTIVE_MIN_SAMPLES = Integer.getInteger("render.adaptiveMinSamples", 16);
+    private static final float ADAPTIVE_ERROR = Float.parseFloat(System.getProperty("render.adaptiveError", "0.05"));
+    // Java-бэкенды на сценах не больше стольких фигур перебирают ShapeColumns на Vector API вместо обхода BVH
+    private static final int COLUMN_SCAN_LIMIT = Integer.getInteger("render.columnScanLimit", 128);
+    // Проверка модуля без обращения к его классам: загрузка PacketTracer или ShapeColumns без модуля
+    // завершилась бы NoClassDefFoundError
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    // -Drender.backend=tiles|packets переключает на бэкенд на чистой Java
+    private static final Backend DEFAULT_BACKEND = Backend.valueOf(System.getProperty("render.backend", "aparapi").toUpperCase());
+
+    private final Scene scene;
+    private final int width;
+    private final int height;
+    private int[] pixels;
+    private final RayTracingKernel kernel;
+    private Range range;
+    private Device device;  // null - выбор Aparapi: OpenCL, если он доступен, иначе пул потоков
+    private TileRenderer tileRenderer;  // Создаётся при первом переключении на TILES или PACKETS
+    private Backend backend;
+    private long uploadedShapeVersion = -1;     // Версии фигур и экземпляров, загруженные в ядро:
+    private long uploadedInstanceVersion = -1;  // движение экземпляров не перестраивает BVH фигур
+    private Camera renderedCamera;
+    private long renderedCameraVersion = -1;
+    // Положение и оси камеры для setCamera (ядро копирует их к себе): при движении камеры кадр не выделяет память
+    private final Vector3 cameraVector = new Vector3();
+    private final float[] cameraPosition = new float[3];
+    private final float[] cameraForward = new float[3];
+    private final float[] cameraUp = new float[3];
+    private final float[] cameraRight = new float[3];
+    private int sampleCount;            // Сэмплов на пиксель в текущем накоплении
+    private int frameNumber;            // Кадров, отрисованных этим контекстом
+    private int seed = DEFAULT_SEED;
+    private boolean progressive = PROGRESSIVE;
+    private AdaptiveSampler adaptiveSampler;  // null - каждый проход сэмплирует все пиксели
+    private final RenderMetrics metrics = new RenderMetrics();
+    private boolean fallbackReported;
+    private PixelStatistics statistics;  // null - счётчики стоимости в ядре выключены
+    private final BooleanSupplier stale = this::isStale;  // Один объект на контекст, а не на кадр
+    private boolean cancelled;
+
+    public RenderContext(Scene scene, int width, int height) {
+        this(scene, width, height, new int[width * height]);
+    }
+
+    // pixels - целевой буфер кадра (например, массив DataBufferInt изображения), ядро пишет прямо в него
+    public RenderContext(Scene scene, int width, int height, int[] pixels) {
+        checkPixels(pixels, width, height);
+        this.scene = scene;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+
+        kernel = new RayTracingKernel(width, height, LIGHT_POSITION.clone(), pixels, MAX_REFLECTIONS, EMITTER_INTENSITY);
+        kernel.setUseBvh(USE_BVH);
+        // Явный режим: буферы передаются только по put/get, а не при каждом execute
+        kernel.setExplicit(true);
+        range = createRange(width * height);
+        setBackend(DEFAULT_BACKEND);
+        if (ADAPTIVE) {
+            setAdaptiveSampler(new AdaptiveSampler(width, height, ADAPTIVE_SPP, ADAPTIVE_MIN_SAMPLES, MAX_SAMPLES, ADAPTIVE_ERROR));
+        }
+        metrics.register();
+    }
+
+    // Следующие кадры пишутся в pixels. Пиксели, которые кадр не трогает (сошедшиеся в адаптивном режиме),
+    // в новом буфере должны быть уже заполнены - см. AdaptiveSampler.copyPass
+    public void setPixels(int[] pixels) {
+        checkPixels(pixels, width, height);
+        this.pixels = pixels;
+        kernel.setPixels(pixels);
+    }
+
+    private static void checkPixels(int[] pixels, int width, int height) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Буфер кадра меньше " + width + "x" + height);
+        }
+    }
+
+    public void setBackend(Backend backend) {
+        if (backend == Backend.PACKETS && !VECTOR_API) {
+            throw new IllegalStateException("Пакетной трассировке нужен модуль Vector API: запустите JVM с --add-modules jdk.incubator.vector");
+        }
+        if (backend != Backend.APARAPI && tileRenderer == null) {
+            tileRenderer = new TileRenderer(width, height);
+        }
+        if (tileRenderer != null) {
+            tileRenderer.setPacketTracing(backend == Backend.PACKETS);
+        }
+        this.backend = backend;
+        sampleCount = 0;  // Накопление другого бэкенда здесь недоступно
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public int[] render() {
+        return render(false);
+    }
+
+    // cancellable - кадр можно бросить, если камера сдвинулась после его начала: Java-бэкенды
+    // перестают раздавать плитки, Aparapi дорисовывает. Брошенный кадр не показывают (isCancelled),
+    // а следующий всё равно начинает накопление заново
+    public int[] render(boolean cancellable) {
+        cancelled = false;
+        FrameEvent event = new FrameEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long allocatedBefore = RenderMetrics.allocatedBytes();
+
+        boolean viewChanged = false;
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.flush();
+        if (uploadedShapeVersion != sceneBuffer.getShapeVersion()) {
+            uploadedShapeVersion = sceneBuffer.getShapeVersion();
+            kernel.setScene(sceneBuffer.getBoxData(), sceneBuffer.getSphereData(), sceneBuffer.buildBVH());
+            kernel.setEmitters(sceneBuffer.getEmitterData(), sceneBuffer.getEmitterCdf(), sceneBuffer.getEmitterCount());
+            viewChanged = true;
+        }
+        if (uploadedInstanceVersion != sceneBuffer.getInstanceVersion()) {
+            uploadedInstanceVersion = sceneBuffer.getInstanceVersion();
+            kernel.setInstances(sceneBuffer.getInstanceData(), sceneBuffer.getInstanceCount(), sceneBuffer.buildInstanceBVH(),
+                    sceneBuffer.getPrototypeBoxData(), sceneBuffer.getPrototypeSphereData(), sceneBuffer.getPrototypeBVH());
+            viewChanged = true;
+        }
+        boolean useColumns = backend != Backend.APARAPI && VECTOR_API && USE_BVH
+                && sceneBuffer.getShapeCount() <= COLUMN_SCAN_LIMIT;
+        kernel.setShapeColumns(useColumns ? sceneBuffer.getColumns() : null);
+
+        Camera camera = scene.getCamera();
+        if (camera != renderedCamera || camera.getVersion() != renderedCameraVersion) {
+            // Ввод двигает камеру из другого потока: положение и оси снимаются вместе
+            synchronized (camera) {
+                renderedCamera = camera;
+                renderedCameraVersion = camera.getVersion();
+                kernel.setCamera(camera.getPosition(cameraVector).toArray(cameraPosition),
+                        camera.getForward(cameraVector).toArray(cameraForward), camera.getUp(cameraVector).toArray(cameraUp),
+                        camera.getRight(cameraVector).toArray(cameraRight), (float) camera.getFov());
+            }
+            viewChanged = true;
+        }
+
+        // Любое изменение камеры или сцены сбрасывает накопление; адаптивный режим всегда накапливает
+        if (viewChanged || (!progressive && adaptiveSampler == null)) {
+            sampleCount = 0;
+        }
+        if (adaptiveSampler != null) {
+            if (sampleCount == 0) {
+                adaptiveSampler.reset();
+            } else if (adaptiveSampler.isDone()) {
+                return pixels;  // Все пиксели сошлись или бюджет исчерпан - кадр не меняется
+            }
+        }
+
+        long packed = System.nanoTime();
+
+        kernel.setSampleIndex(sampleCount);
+        kernel.setFrame(frameNumber, seed);
+        Range passRange = range;
+        if (adaptiveSampler != null) {
+            passRange = createRange(adaptiveSampler.beginPass(kernel));
+        }
+        if (backend != Backend.APARAPI) {
+            tileRenderer.render(kernel, cancellable ? stale : null);  // Java-потоки пишут прямо в pixels, копирование не нужно
+        } else {
+            kernel.execute(passRange);
+        }
+        long executed = System.nanoTime();
+        cancelled = cancellable && isStale();
+
+        if (backend == Backend.APARAPI) {
+            kernel.get(pixels);
+        }
+        if (adaptiveSampler != null) {
+            int[] pixelActive = kernel.getPixelActive();
+            if (backend == Backend.APARAPI) {
+                kernel.get(pixelActive);
+            }
+            adaptiveSampler.endPass(pixelActive);
+        }
+        long rays = getRaysTraced();
+        long transferred = System.nanoTime();
+
+        long allocated = allocatedBefore < 0 ? -1 : RenderMetrics.allocatedBytes() - allocatedBefore;
+        boolean fallback = isFallback();
+        RenderMetrics.Frame frame = new RenderMetrics.Frame(frameNumber, packed - start, executed - packed,
+                transferred - executed, transferred - start, rays, allocated, getExecutionPath(), fallback);
+        metrics.record(frame);
+        if (fallback && !fallbackReported) {
+            fallbackReported = true;
+            System.err.println("Aparapi не запустил OpenCL, ядро исполняется в режиме " + frame.executionMode());
+        }
+        if (event.shouldCommit()) {
+            event.frame = frame.number();
+            event.pack = frame.packNanos();
+            event.execute = frame.executeNanos();
+            event.transfer = frame.transferNanos();
+            event.rays = rays;
+            event.allocated = allocated;
+            event.executionMode = frame.executionMode();
+            event.fallback = fallback;
+            event.commit();
+        }
+
+        sampleCount++;
+        frameNumber++;
+        return pixels;
+    }
+
+    // Камера сдвинулась или заменена после снимка в начале последнего кадра
+    public boolean isStale() {
+        Camera camera = scene.getCamera();
+        return camera != renderedCamera || camera.getVersion() != renderedCameraVersion;
+    }
+
+    // Последний кадр брошен ради нового положения камеры: часть пикселей может остаться от прошлого
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Чем на самом деле исполнялся последний кадр: устройство OpenCL, JTP/SEQ Aparapi или Java-бэкенд
+    public String getExecutionPath() {
+        if (backend != Backend.APARAPI) {
+            return backend.name();
+        }
+        // isRunningCL говорит о предпочтительном устройстве ядра, а не об устройстве из Range
+        if (device instanceof JavaDevice) {
+            return device == JavaDevice.SEQUENTIAL ? "SEQ" : "JTP";
+        }
+        if (kernel.isRunningCL()) {
+            return kernel.getTargetDevice().getType().name();
+        }
+        return "JTP";  // Запасной режим Aparapi
+    }
+
+    // Устройство Java не выбрано явно (setDevice), а ядро исполняется не в OpenCL
+    private boolean isFallback() {
+        return backend == Backend.APARAPI && !(device instanceof JavaDevice) && !kernel.isRunningCL();
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    // true, пока прогрессивный или адаптивный режим может уточнить изображение следующим кадром
+    public boolean isConverging() {
+        if (adaptiveSampler != null) {
+            return !adaptiveSampler.isDone();
+        }
+        return progressive && sampleCount < MAX_SAMPLES;
+    }
+
+    // null выключает адаптивную выборку
+    public void setAdaptiveSampler(AdaptiveSampler adaptiveSampler) {
+        this.adaptiveSampler = adaptiveSampler;
+        if (adaptiveSampler != null) {
+            adaptiveSampler.configure(kernel);
+        } else {
+            kernel.setAdaptive(false, 0, 0, 0);
+        }
+        sampleCount = 0;
+    }
+
+    public AdaptiveSampler getAdaptiveSampler() {
+        return adaptiveSampler;
+    }
+
+    // Одинаковое зерно и одинаковая последовательность кадров дают побитово одинаковые изображения
+    public void setSeed(int seed) {
+        this.seed = seed;
+        this.frameNumber = 0;
+        this.sampleCount = 0;
+    }
+
+    // Пакетный рендер накапливает сэмплы независимо от -Drender.progressive
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    // Лучи последнего кадра: первичные, отражённые и теневые
+    public long getRaysTraced() {
+        int[] rayCounts = kernel.getRayCounts();
+        if (backend == Backend.APARAPI) {
+            kernel.get(rayCounts);
+        }
+        if (adaptiveSampler != null) {
+            return adaptiveSampler.sumRays(rayCounts);
+        }
+        long total = 0;
+        for (int i = 0; i < width * height; i++) {
+            total += rayCounts[i];
+        }
+        return total;
+    }
+
+    // Счётчики стоимости по пикселям; включение начинает накопление заново, чтобы суммы покрывали все его сэмплы
+    public void setStatistics(boolean enabled) {
+        if (enabled == (statistics != null)) return;
+        statistics = enabled ? new PixelStatistics(width, height) : null;
+        kernel.setStatistics(enabled);
+        sampleCount = 0;
+    }
+
+    public boolean isStatistics() {
+        return statistics != null;
+    }
+
+    // Средняя стоимость пикселей текущего накопления; null, если статистика выключена
+    public PixelStatistics getPixelStatistics() {
+        if (statistics == null) return null;
+        int[] sums = kernel.getPixelStats();
+        int[] samples = adaptiveSampler != null ? kernel.getSampleCounts() : null;
+        if (backend == Backend.APARAPI) {
+            kernel.get(sums);
+            if (samples != null) {
+                kernel.get(samples);
+            }
+        }
+        statistics.update(sums, samples, sampleCount);
+        return statistics;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Устройство Aparapi задаётся через Range, без устаревшего Kernel.setExecutionMode:
+    // JavaDevice.THREAD_POOL (JTP), JavaDevice.SEQUENTIAL (SEQ, в одном потоке) или устройство OpenCL
+    public void setDevice(Device device) {
+        this.device = device;
+        range = createRange(width * height);
+        sampleCount = 0;
+    }
+
+    public Device getDevice() {
+        return device;
+    }
+
+    // SEQUENTIAL требует группу размером 1
+    private Range createRange(int size) {
+        if (device == null) {
+            return Range.create(size);
+        }
+        return device == JavaDevice.SEQUENTIAL ? Range.create(device, size, 1) : Range.create(device, size);
+    }
+
+    public void dispose() {
+        metrics.unregister();
+        if (tileRenderer != null) {
+            tileRenderer.shutdown();
+        }
+        kernel.dispose();
+    }
+}
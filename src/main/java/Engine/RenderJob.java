@@ -0,0 +1,148 @@
+package Engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Всё, что нужно воркеру для плиток кадра: упакованные записи SceneBuffer, готовое BVH, таблица
+// эмиттеров, экземпляры с геометрией прототипов, камера и параметры накопления. Передаётся один раз на соединение; плитки, посчитанные
+// воркером, побитово совпадают с теми же пикселями локального рендера (BatchRender --backend tiles)
+record RenderJob(int width, int height, int samples, int seed, boolean useBvh,
+                 float[] cameraPosition, float[] cameraDirection, float[] cameraUp, float[] cameraRight, float fov,
+                 float[] boxes, float[] spheres, BVH bvh, float[] emitters, float[] emitterCdf, int emitterCount,
+                 float[] instances, int instanceCount, BVH instanceBvh,
+                 float[] prototypeBoxes, float[] prototypeSpheres, BVH prototypeBvh) {
+
+    static RenderJob capture(Scene scene, int width, int height, int samples, int seed) {
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.flush();
+        Camera camera = scene.getCamera();
+        synchronized (camera) {
+            return new RenderJob(width, height, samples, seed, RenderContext.USE_BVH,
+                    camera.getPosition().toArray(), camera.getForward().toArray(), camera.getUp().toArray(),
+                    camera.getRight().toArray(), (float) camera.getFov(),
+                    sceneBuffer.getBoxData(), sceneBuffer.getSphereData(), sceneBuffer.buildBVH(),
+                    sceneBuffer.getEmitterData(), sceneBuffer.getEmitterCdf(), sceneBuffer.getEmitterCount(),
+                    sceneBuffer.getInstanceData(), sceneBuffer.getInstanceCount(), sceneBuffer.buildInstanceBVH(),
+                    sceneBuffer.getPrototypeBoxData(), sceneBuffer.getPrototypeSphereData(), sceneBuffer.getPrototypeBVH());
+        }
+    }
+
+    // Ядро без запуска execute: воркер вызывает renderPixel сам, результат - в pixels (width * height)
+    RayTracingKernel createKernel(int[] pixels) {
+        RayTracingKernel kernel = new RayTracingKernel(width, height, RenderContext.LIGHT_POSITION.clone(),
+                pixels, RenderContext.MAX_REFLECTIONS, RenderContext.EMITTER_INTENSITY);
+        kernel.setScene(boxes, spheres, bvh);
+        kernel.setEmitters(emitters, emitterCdf, emitterCount);
+        kernel.setInstances(instances, instanceCount, instanceBvh, prototypeBoxes, prototypeSpheres, prototypeBvh);
+        kernel.setCamera(cameraPosition, cameraDirection, cameraUp, cameraRight, fov);
+        kernel.setUseBvh(useBvh);
+        return kernel;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(samples);
+        out.writeInt(seed);
+        out.writeBoolean(useBvh);
+        writeFloats(out, cameraPosition);
+        writeFloats(out, cameraDirection);
+        writeFloats(out, cameraUp);
+        writeFloats(out, cameraRight);
+        out.writeFloat(fov);
+        writeFloats(out, boxes);
+        writeFloats(out, spheres);
+        writeBvh(out, bvh);
+        writeFloats(out, emitters);
+        writeFloats(out, emitterCdf);
+        out.writeInt(emitterCount);
+        writeFloats(out, instances);
+        out.writeInt(instanceCount);
+        writeBvh(out, instanceBvh);
+        writeFloats(out, prototypeBoxes);
+        writeFloats(out, prototypeSpheres);
+        writeBvh(out, prototypeBvh);
+    }
+
+    static RenderJob read(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        int samples = in.readInt();
+        int seed = in.readInt();
+        boolean useBvh = in.readBoolean();
+        float[] position = readFloats(in);
+        float[] direction = readFloats(in);
+        float[] up = readFloats(in);
+        float[] right = readFloats(in);
+        float fov = in.readFloat();
+        float[] boxes = readFloats(in);
+        float[] spheres = readFloats(in);
+        BVH bvh = readBvh(in);
+        float[] emitters = readFloats(in);
+        float[] emitterCdf = readFloats(in);
+        int emitterCount = in.readInt();
+        float[] instances = readFloats(in);
+        int instanceCount = in.readInt();
+        BVH instanceBvh = readBvh(in);
+        float[] prototypeBoxes = readFloats(in);
+        float[] prototypeSpheres = readFloats(in);
+        BVH prototypeBvh = readBvh(in);
+        return new RenderJob(width, height, samples, seed, useBvh, position, direction, up, right, fov,
+                boxes, spheres, bvh, emitters, emitterCdf, emitterCount,
+                instances, instanceCount, instanceBvh, prototypeBoxes, prototypeSpheres, prototypeBvh);
+    }
+
+    private static void writeBvh(DataOutputStream out, BVH bvh) throws IOException {
+        writeFloats(out, bvh.getNodeBounds());
+        writeInts(out, bvh.getNodeLinks());
+        writeInts(out, bvh.getPrimitives());
+        out.writeInt(bvh.getNodeCount());
+    }
+
+    private static BVH readBvh(DataInputStream in) throws IOException {
+        float[] nodeBounds = readFloats(in);
+        int[] nodeLinks = readInts(in);
+        int[] primitives = readInts(in);
+        return new BVH(nodeBounds, nodeLinks, primitives, in.readInt());
+    }
+
+    // Массивы идут одним блоком байт, а не по writeFloat на элемент
+    static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+        buffer.asFloatBuffer().put(values);
+        out.writeInt(values.length);
+        out.write(buffer.array());
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        out.writeInt(values.length);
+        out.write(buffer.array());
+    }
+
+    static float[] readFloats(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[checkedLength(in.readInt()) * Float.BYTES];
+        in.readFully(bytes);
+        float[] values = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[checkedLength(in.readInt()) * Integer.BYTES];
+        in.readFully(bytes);
+        int[] values = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+        return values;
+    }
+
+    private static int checkedLength(int length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE / 8) {
+            throw new IOException("Повреждённый поток: длина массива " + length);
+        }
+        return length;
+    }
+}
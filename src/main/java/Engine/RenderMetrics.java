@@ -0,0 +1,177 @@
+package Engine;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Метрики кадров одного RenderContext. Пишет только поток рендера: каждый кадр публикуется
+// неизменяемым снимком Frame, поэтому JMX и оверлей читают согласованные значения без блокировок.
+// Стоимость на кадр - несколько вызовов System.nanoTime, счётчик выделенной памяти и одно событие JFR.
+public class RenderMetrics implements RenderMetricsMBean {
+    private static final AtomicInteger CONTEXTS = new AtomicInteger();
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    // Этапы кадра в наносекундах. allocatedBytes - выделено всеми потоками JVM за кадр (-1, если JVM не умеет считать)
+    public record Frame(long number, long packNanos, long executeNanos, long transferNanos, long totalNanos,
+                        long raysTraced, long allocatedBytes, String executionMode, boolean fallback) {
+        public double raysPerSecond() {
+            return totalNanos > 0 ? raysTraced * 1e9 / totalNanos : 0;
+        }
+    }
+
+    private volatile Frame last;
+    private volatile long blitNanos;
+    private volatile long frameCount;
+    private volatile long totalRays;
+    private volatile long totalNanos;
+    private volatile long totalPackNanos;
+    private volatile long totalExecuteNanos;
+    private volatile long totalTransferNanos;
+    private ObjectName objectName;
+
+    void record(Frame frame) {
+        last = frame;
+        frameCount++;
+        totalRays += frame.raysTraced();
+        totalNanos += frame.totalNanos();
+        totalPackNanos += frame.packNanos();
+        totalExecuteNanos += frame.executeNanos();
+        totalTransferNanos += frame.transferNanos();
+    }
+
+    // Вывод кадра на экран измеряет Renderer: он происходит уже после RenderContext.render
+    public void recordBlit(long nanos) {
+        blitNanos = nanos;
+    }
+
+    // null, пока не отрисовано ни одного кадра
+    public Frame getLastFrame() {
+        return last;
+    }
+
+    public long getTotalRays() {
+        return totalRays;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getTotalPackNanos() {
+        return totalPackNanos;
+    }
+
+    public long getTotalExecuteNanos() {
+        return totalExecuteNanos;
+    }
+
+    public long getTotalTransferNanos() {
+        return totalTransferNanos;
+    }
+
+    // Счётчик байт, выделенных всеми живыми потоками; разность до и после кадра - выделение за кадр
+    static long allocatedBytes() {
+        return THREADS != null ? THREADS.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("Engine:type=RenderMetrics,context=" + CONTEXTS.incrementAndGet());
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.err.println("Метрики рендера не зарегистрированы в JMX: " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            System.err.println("Не удалось снять метрики рендера с регистрации: " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public double getLastFrameMillis() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.totalNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastPackMillis() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.packNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastExecuteMillis() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.executeNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastTransferMillis() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.transferNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastBlitMillis() {
+        return blitNanos / 1e6;
+    }
+
+    @Override
+    public long getLastRaysTraced() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.raysTraced();
+    }
+
+    @Override
+    public double getLastRaysPerSecond() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.raysPerSecond();
+    }
+
+    @Override
+    public double getAverageRaysPerSecond() {
+        long nanos = totalNanos;
+        return nanos > 0 ? totalRays * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public long getLastAllocatedBytes() {
+        Frame frame = last;
+        return frame == null ? 0 : frame.allocatedBytes();
+    }
+
+    @Override
+    public String getExecutionMode() {
+        Frame frame = last;
+        return frame == null ? "" : frame.executionMode();
+    }
+
+    @Override
+    public boolean isFallback() {
+        Frame frame = last;
+        return frame != null && frame.fallback();
+    }
+}
@@ -0,0 +1,28 @@
+package Engine;
+
+// Атрибуты JMX (Engine:type=RenderMetrics): последний кадр и средние за всё время контекста
+public interface RenderMetricsMBean {
+    long getFrameCount();
+
+    double getLastFrameMillis();
+
+    double getLastPackMillis();
+
+    double getLastExecuteMillis();
+
+    double getLastTransferMillis();
+
+    double getLastBlitMillis();
+
+    long getLastRaysTraced();
+
+    double getLastRaysPerSecond();
+
+    double getAverageRaysPerSecond();
+
+    long getLastAllocatedBytes();
+
+    String getExecutionMode();
+
+    boolean isFallback();
+}
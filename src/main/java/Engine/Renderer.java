@@ -0,0 +1,268 @@
+package Engine;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Окно только показывает готовые кадры: трассировка идёт в отдельном потоке рендера, ядро которого
+// пишет прямо в задний буфер; под блокировкой он меняется местами с передним. EDT рисует передний
+// буфер и никогда не ждёт трассировки. Ввод меняет камеру сразу и будит поток рендера; кадр,
+// начатый с прежним положением камеры, прерывается, так что задержка ввода - не больше кадра.
+public class Renderer extends JPanel {
+    // -Drender.dynamicResolution=false оставляет полное разрешение и во время движения камеры
+    private static final boolean DYNAMIC_RESOLUTION = Boolean.parseBoolean(System.getProperty("render.dynamicResolution", "true"));
+    private static final double TARGET_FRAME_MS = Double.parseDouble(System.getProperty("render.targetFrameMs", "33"));
+    private static final int IDLE_MS = Integer.getInteger("render.idleMs", 250);  // Пауза ввода до возврата к полному разрешению
+
+    // Что сейчас показано: передний буфер image ступени level с кадром контекста context
+    private record Shown(RenderContext context, BufferedImage image, int level, int width, int height, String statistics) {
+    }
+
+    private final Scene scene;
+    private final int width;
+    private final int height;
+
+    // Состояние потока рендера; из EDT не читается
+    // Контекст на каждую ступень DynamicResolution; полная создаётся сразу, остальные - при первом движении
+    private final RenderContext[] contexts = new RenderContext[DynamicResolution.FULL + 1];
+    private RenderContext context;  // Контекст последнего кадра
+    private int level = DynamicResolution.FULL;
+    private final DynamicResolution resolution = new DynamicResolution(DYNAMIC_RESOLUTION, TARGET_FRAME_MS, IDLE_MS);
+    private Camera seenCamera;
+    private long seenCameraVersion;
+    private boolean lastCancelled;
+
+    // Двойная буферизация: у каждой ступени два изображения её размера, контекст ступени пишет
+    // в массив пикселей заднего. Передний может рисовать EDT, поэтому поток рендера его не трогает
+    private final BufferedImage[] fronts = new BufferedImage[DynamicResolution.FULL + 1];
+    private final BufferedImage[] backs = new BufferedImage[DynamicResolution.FULL + 1];
+    private final Object bufferLock = new Object();
+    private Shown shown;            // Под bufferLock; null до первого кадра
+
+    private final Thread renderThread;
+    private final Object frameLock = new Object();
+    private boolean frameRequested = true;  // Под frameLock
+    private volatile boolean running = true;
+
+    // Метрики последнего кадра поверх изображения; -Drender.overlay=true или F3 в окне
+    private volatile boolean overlay = Boolean.getBoolean("render.overlay");
+    // Тепловая карта стоимости вместо изображения (F4); null - обычный кадр, счётчики ядра выключены
+    private volatile PixelStatistics.Counter heatmap;
+
+    public Renderer(Scene scene) {
+        this.scene = scene;
+        this.width = 800;
+        this.height = 600;
+        this.seenCamera = scene.getCamera();
+        this.seenCameraVersion = seenCamera.getVersion();
+        activate(DynamicResolution.FULL);
+
+        renderThread = new Thread(this::renderLoop, "render");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    // Делает текущим контекст ступени level, создавая его и буферы при первом обращении
+    private void activate(int level) {
+        if (contexts[level] == null) {
+            int levelWidth = Math.max(1, width * level / DynamicResolution.FULL);
+            int levelHeight = Math.max(1, height * level / DynamicResolution.FULL);
+            fronts[level] = new BufferedImage(levelWidth, levelHeight, BufferedImage.TYPE_INT_RGB);
+            backs[level] = new BufferedImage(levelWidth, levelHeight, BufferedImage.TYPE_INT_RGB);
+            contexts[level] = new RenderContext(scene, levelWidth, levelHeight, framebuffer(backs[level]));
+        }
+        this.level = level;
+        context = contexts[level];
+    }
+
+    // Вызывается из EDT. Камера меняется сразу; все нажатия, пришедшие до начала следующего кадра,
+    // сливаются в одно её положение
+    public void handleCameraInput(int keyCode) {
+        scene.handleCameraInput(keyCode);
+        requestFrame();
+    }
+
+    private void requestFrame() {
+        synchronized (frameLock) {
+            frameRequested = true;
+            frameLock.notifyAll();
+        }
+    }
+
+    private void renderLoop() {
+        try {
+            while (awaitFrame()) {
+                if (renderFrame()) {
+                    requestFrame();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (RenderContext levelContext : contexts) {
+                if (levelContext != null) {
+                    levelContext.dispose();
+                }
+            }
+        }
+    }
+
+    private boolean awaitFrame() throws InterruptedException {
+        synchronized (frameLock) {
+            while (running && !frameRequested) {
+                frameLock.wait();
+            }
+            frameRequested = false;
+            return running;
+        }
+    }
+
+    // Рисует кадр в задний буфер и показывает его; true - нужен следующий кадр без нового ввода
+    private boolean renderFrame() {
+        long now = System.nanoTime();
+        Camera camera = scene.getCamera();
+        long cameraVersion = camera.getVersion();
+        if (camera != seenCamera || cameraVersion != seenCameraVersion) {
+            seenCamera = camera;
+            seenCameraVersion = cameraVersion;
+            resolution.inputArrived(now);
+        }
+        boolean moving = resolution.isMoving(now);
+        activate(resolution.levelAt(now));
+        PixelStatistics.Counter counter = heatmap;
+        context.setStatistics(counter != null);
+
+        // Кадр со старым положением камеры не показывается. Два кадра подряд не прерываются,
+        // иначе при вводе чаще кадра не было бы показано ни одного
+        RenderMetrics.Frame previous = context.getMetrics().getLastFrame();
+        int[] pixels = context.render(!lastCancelled);
+        lastCancelled = context.isCancelled();
+        if (lastCancelled) {
+            return true;
+        }
+        RenderMetrics.Frame frame = context.getMetrics().getLastFrame();
+        if (frame == previous) {
+            return level != DynamicResolution.FULL;  // Адаптивное накопление закончено, задний буфер не менялся
+        }
+        // Первый кадр контекста включает загрузку сцены и подготовку ядра - по нему ступень не подбирается
+        if (moving && frame.number() > 0) {
+            resolution.frameRendered(level, frame.totalNanos());
+        }
+
+        String statistics = null;
+        if (counter != null) {
+            PixelStatistics pixelStatistics = context.getPixelStatistics();
+            // Карта затирает кадр ядра; включение и выключение статистики и так начинают накопление заново
+            pixelStatistics.heatmap(counter, pixels);
+            statistics = String.format(Locale.ROOT, "%s на сэмпл: среднее %.2f, максимум %.2f",
+                    counter.getTitle(), pixelStatistics.getMean(counter), pixelStatistics.getMax(counter));
+        }
+        BufferedImage image = backs[level];
+        synchronized (bufferLock) {
+            shown = new Shown(context, image, level, context.getWidth(), context.getHeight(), statistics);
+        }
+        backs[level] = fronts[level];
+        fronts[level] = image;
+        repaint();
+
+        // Адаптивный проход пишет только свои пиксели: остальные новый задний буфер должен получить от показанного
+        int[] next = framebuffer(backs[level]);
+        AdaptiveSampler sampler = context.getAdaptiveSampler();
+        if (sampler != null && counter == null) {
+            sampler.copyPass(pixels, next);
+        }
+        context.setPixels(next);
+
+        // Пока камера недавно двигалась, уменьшенный кадр уточняется до возврата к полному разрешению
+        return context.isConverging() || level != DynamicResolution.FULL;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        synchronized (bufferLock) {
+            if (shown == null) return;
+
+            // Один вызов drawImage с масштабированием под размер панели; уменьшенный кадр сглаживается
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, shown.level() == DynamicResolution.FULL
+                    ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            BlitEvent event = new BlitEvent();
+            event.begin();
+            long start = System.nanoTime();
+            g2.drawImage(shown.image(), 0, 0, getWidth(), getHeight(), 0, 0, shown.width(), shown.height(), null);
+            shown.context().getMetrics().recordBlit(System.nanoTime() - start);
+            event.commit();
+
+            if (overlay) {
+                drawOverlay(g, shown);
+            }
+        }
+    }
+
+    private static int[] framebuffer(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    public void toggleOverlay() {
+        overlay = !overlay;
+        repaint();
+    }
+
+    // Изображение -> отскоки -> проверки пересечений -> теневые лучи -> изображение
+    public void cycleHeatmap() {
+        PixelStatistics.Counter[] counters = PixelStatistics.Counter.values();
+        PixelStatistics.Counter current = heatmap;
+        heatmap = current == null ? counters[0]
+                : current.ordinal() + 1 < counters.length ? counters[current.ordinal() + 1] : null;
+        requestFrame();
+    }
+
+    private void drawOverlay(Graphics g, Shown shown) {
+        RenderMetrics metrics = shown.context().getMetrics();
+        RenderMetrics.Frame frame = metrics.getLastFrame();
+        if (frame == null) return;
+        String[] lines = {
+                String.format(Locale.ROOT, "Кадр %d: %.1f мс (сцена %.1f, ядро %.1f, передача %.1f, вывод %.1f)",
+                        frame.number(), frame.totalNanos() / 1e6, frame.packNanos() / 1e6, frame.executeNanos() / 1e6,
+                        frame.transferNanos() / 1e6, metrics.getLastBlitMillis()),
+                String.format(Locale.ROOT, "Лучей: %d, %.2f млн/с", frame.raysTraced(), frame.raysPerSecond() / 1e6),
+                "Режим: " + frame.executionMode() + (frame.fallback() ? " (запасной, OpenCL недоступен)" : ""),
+                String.format(Locale.ROOT, "Разрешение: %dx%d (%d/%d)", shown.width(), shown.height(),
+                        shown.level(), DynamicResolution.FULL),
+                frame.allocatedBytes() < 0 ? "Выделено: н/д" : "Выделено за кадр: " + frame.allocatedBytes() / 1024 + " КБ",
+                shown.statistics()
+        };
+        if (shown.statistics() == null) {
+            lines = Arrays.copyOf(lines, lines.length - 1);
+        }
+        FontMetrics font = g.getFontMetrics();
+        int lineHeight = font.getHeight();
+        int boxWidth = 0;
+        for (String line : lines) {
+            boxWidth = Math.max(boxWidth, font.stringWidth(line));
+        }
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(4, 4, boxWidth + 12, lineHeight * lines.length + 8);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 10, 8 + font.getAscent() + i * lineHeight);
+        }
+    }
+
+    // Останавливает поток рендера и освобождает ресурсы ядер; вызывается при закрытии окна.
+    // Текущий кадр дорисовывается: ядро Aparapi нельзя прервать посреди execute
+    public void dispose() {
+        running = false;
+        requestFrame();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
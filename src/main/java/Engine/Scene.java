@@ -1,3 +1,6 @@
+package Engine;
+
+import Drawable.Instance;
 import Drawable.Shape;
 import Drawable.Vector3;
 
@@ -7,8 +10,10 @@ import java.util.List;
 
 
 public class Scene {
-    private Camera camera;
+    private volatile Camera camera;  // Читается потоком рендера
     private List<Shape> shapes;
+    private final List<Instance> instances = new ArrayList<>();
+    private final SceneBuffer sceneBuffer = new SceneBuffer();  // Упакованные данные фигур для ядра
 
     public Scene(Camera camera) {
         this.camera = camera;
@@ -17,16 +22,48 @@ public class Scene {
 
     public void addShape(Shape shape) {
         shapes.add(shape);
+        sceneBuffer.add(shape);
     }
 
     public void removeShape(Shape shape) {
-        shapes.remove(shape);
+        if (shapes.remove(shape)) {
+            sceneBuffer.remove(shape);
+        }
+    }
+
+    // Вызывается после изменения параметров фигуры, чтобы переупаковать только её слот
+    public void updateShape(Shape shape) {
+        sceneBuffer.update(shape);
     }
 
     public List<Shape> getShapes() {
         return shapes;
     }
 
+    public void addInstance(Instance instance) {
+        instances.add(instance);
+        sceneBuffer.addInstance(instance);
+    }
+
+    public void removeInstance(Instance instance) {
+        if (instances.remove(instance)) {
+            sceneBuffer.removeInstance(instance);
+        }
+    }
+
+    // Вызывается после изменения преобразования, цвета или материала экземпляра
+    public void updateInstance(Instance instance) {
+        sceneBuffer.updateInstance(instance);
+    }
+
+    public List<Instance> getInstances() {
+        return instances;
+    }
+
+    public SceneBuffer getSceneBuffer() {
+        return sceneBuffer;
+    }
+
     public Camera getCamera() {
         return camera;
     }
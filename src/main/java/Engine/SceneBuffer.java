@@ -0,0 +1,442 @@
+package Engine;
+
+import Drawable.Instance;
+import Drawable.Shape;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Упакованные данные сцены для ядра. Фигуры каждого типа лежат в своём массиве с фиксированным шагом
+// (параллелепипеды и сферы отдельно), каждая занимает постоянный слот; изменения помечают слоты грязными,
+// и flush() переписывает только их.
+// Ссылка на фигуру в ядре и BVH: (смещение записи << 1) | 0 для параллелепипеда, | 1 для сферы.
+// Эмиттеры дополнительно собираются в компактную таблицу, чтобы освещение не перебирало все фигуры.
+// Записи, загруженные из файла сцены (SceneFile), живут без объектов Shape: их нельзя обновить
+// по одной, но новые фигуры добавляются к ним как обычно.
+// Экземпляры (Instance) - второй уровень: их записи лежат в своём массиве, ядро обходит их по отдельному
+// дереву верхнего уровня, а геометрия прототипов упакована один раз в PrototypeBuffer.
+// Экземпляры не попадают в таблицу эмиттеров: светящиеся объекты добавляются обычными фигурами.
+public class SceneBuffer {
+    // Запись эмиттера: [0..2] центр, [3] радиус описанной сферы, [4..6] цвет RGB (0..1), [7] мощность для выбора
+    public static final int EMITTER_STRIDE = 8;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMITTER_MATERIAL = 4;
+    private static final boolean DEBUG = Boolean.getBoolean("render.debug");
+
+    private final Map<Shape, Integer> slots = new IdentityHashMap<>();
+    private final Pool<Shape> boxes = new Pool<>("параллелепипеды", Parallelepiped.GPU_STRIDE, 0, Shape::writeGPUData);
+    private final Pool<Shape> spheres = new Pool<>("сферы", Sphere.GPU_STRIDE, 1, Shape::writeGPUData);
+    private final Map<Instance, Integer> instanceSlots = new IdentityHashMap<>();
+    private final PrototypeBuffer prototypes = new PrototypeBuffer();
+    private final Pool<Instance> instances = new Pool<>("экземпляры", Instance.GPU_STRIDE, -1,
+            (instance, target, offset) -> instance.writeGPUData(target, offset, prototypes.add(instance.getPrototype())));
+    private float[] emitters = new float[EMITTER_STRIDE];
+    private float[] emitterCdf = new float[1];  // Нормированная накопленная мощность эмиттеров
+    private int emitterCount;
+    private long version;   // Увеличивается при каждом flush(), изменившем данные
+    private long shapeVersion;      // Только изменения фигур: от неё зависят BVH сцены, эмиттеры и столбцы
+    private long instanceVersion;   // Только изменения экземпляров
+    private ShapeColumns columns;       // Создаётся при первом запросе: нужен модуль Vector API
+    private long columnsVersion = -1;
+    private BVH prebuiltBVH;            // Дерево из файла сцены, верно только для версии prebuiltVersion
+    private long prebuiltVersion = -1;
+
+    public void add(Shape shape) {
+        if (slots.containsKey(shape)) return;
+        Pool<Shape> pool = poolFor(shape);
+        if (shape.getGPUDataSize() != pool.stride) {
+            throw new IllegalStateException("Запись фигуры " + shape.getClass().getSimpleName()
+                    + " не совпадает с шагом массива: " + shape.getGPUDataSize());
+        }
+        slots.put(shape, pool.add(shape));
+    }
+
+    public void remove(Shape shape) {
+        Integer slot = slots.remove(shape);
+        if (slot == null) return;
+        poolFor(shape).remove(slot);
+    }
+
+    // Помечает слот фигуры для перезаписи после изменения её параметров
+    public void update(Shape shape) {
+        Integer slot = slots.get(shape);
+        if (slot != null) {
+            poolFor(shape).dirtySlots.set(slot);
+        }
+    }
+
+    public void addInstance(Instance instance) {
+        if (instanceSlots.containsKey(instance)) return;
+        instanceSlots.put(instance, instances.add(instance));
+    }
+
+    public void removeInstance(Instance instance) {
+        Integer slot = instanceSlots.remove(instance);
+        if (slot != null) {
+            instances.remove(slot);
+        }
+    }
+
+    // Помечает слот экземпляра для перезаписи после изменения его преобразования, цвета или материала
+    public void updateInstance(Instance instance) {
+        Integer slot = instanceSlots.get(instance);
+        if (slot != null) {
+            instances.dirtySlots.set(slot);
+        }
+    }
+
+    // Переписывает грязные диапазоны слотов; возвращает true, если данные изменились
+    public boolean flush() {
+        boolean shapesChanged = boxes.flush();
+        shapesChanged |= spheres.flush();
+        if (shapesChanged) {
+            rebuildEmitters();
+            shapeVersion++;
+        }
+        // Первый экземпляр прототипа упаковывает и его геометрию
+        boolean instancesChanged = instances.flush();
+        if (instancesChanged) {
+            instanceVersion++;
+        }
+        if (shapesChanged || instancesChanged) {
+            version++;
+        }
+        return shapesChanged || instancesChanged;
+    }
+
+    // Таблица строится по уже упакованным записям: материал, центр и цвет лежат в общем заголовке
+    private void rebuildEmitters() {
+        int count = boxes.countMaterial(EMITTER_MATERIAL) + spheres.countMaterial(EMITTER_MATERIAL);
+        if (count * EMITTER_STRIDE > emitters.length) {
+            emitters = new float[count * EMITTER_STRIDE];
+            emitterCdf = new float[count];
+        }
+        emitterCount = boxes.collectEmitters(emitters, 0);
+        emitterCount = spheres.collectEmitters(emitters, emitterCount);
+
+        float total = 0;
+        for (int i = 0; i < emitterCount; i++) {
+            total += emitters[i * EMITTER_STRIDE + 7];
+            emitterCdf[i] = total;
+        }
+        for (int i = 0; i < emitterCount; i++) {
+            emitterCdf[i] = total > 0 ? emitterCdf[i] / total : (i + 1f) / emitterCount;
+        }
+        if (DEBUG) {
+            System.out.println("Эмиттеров в сцене: " + emitterCount);
+        }
+    }
+
+    private Pool<Shape> poolFor(Shape shape) {
+        return switch (shape.getGPUType()) {
+            case Shape.GPU_TYPE_BOX -> boxes;
+            case Shape.GPU_TYPE_SPHERE -> spheres;
+            default -> throw new IllegalArgumentException("Неизвестный тип записи " + shape.getGPUType());
+        };
+    }
+
+    // Готовые записи одного типа (GPU_TYPE_*) из файла сцены; count - число слотов, пустые слоты
+    // (материал 0) станут свободными. Буфер этого типа должен быть пуст
+    void loadRecords(int gpuType, FloatBuffer records, int count) {
+        Pool<Shape> pool = switch (gpuType) {
+            case Shape.GPU_TYPE_BOX -> boxes;
+            case Shape.GPU_TYPE_SPHERE -> spheres;
+            default -> throw new IllegalArgumentException("Неизвестный тип записи " + gpuType);
+        };
+        pool.load(records, count);
+    }
+
+    // Дерево, построенное заранее для текущих записей; после их изменения buildBVH строит новое
+    void setPrebuiltBVH(BVH bvh) {
+        flush();
+        prebuiltBVH = bvh;
+        prebuiltVersion = shapeVersion;
+    }
+
+    // Границы берутся из заголовков уже упакованных записей
+    public BVH buildBVH() {
+        if (prebuiltBVH != null && prebuiltVersion == shapeVersion) {
+            return prebuiltBVH;
+        }
+        float[] liveBounds = new float[getShapeCount() * 6];
+        int[] refs = new int[getShapeCount()];
+        int count = boxes.collect(liveBounds, refs, 0);
+        count = spheres.collect(liveBounds, refs, count);
+        return BVH.build(liveBounds, refs, count);
+    }
+
+    // Дерево верхнего уровня: примитивы - смещения записей экземпляров
+    public BVH buildInstanceBVH() {
+        float[] liveBounds = new float[instances.liveCount * 6];
+        int[] refs = new int[instances.liveCount];
+        int count = instances.collect(liveBounds, refs, 0);
+        return BVH.build(liveBounds, refs, count);
+    }
+
+    // Ссылка на фигуру в формате ядра или -1, если фигуры нет в сцене
+    public int getReference(Shape shape) {
+        Integer slot = slots.get(shape);
+        if (slot == null) return -1;
+        Pool<Shape> pool = poolFor(shape);
+        return (slot * pool.stride << 1) | pool.kind;
+    }
+
+    // Столбцы геометрии для Java-бэкендов, пересобранные по текущей версии записей
+    public ShapeColumns getColumns() {
+        if (columns == null) {
+            columns = new ShapeColumns();
+        }
+        if (columnsVersion != shapeVersion) {
+            columns.update(boxes.data, boxes.slotCount, spheres.data, spheres.slotCount);
+            columnsVersion = shapeVersion;
+        }
+        return columns;
+    }
+
+    public float[] getBoxData() {
+        return boxes.data;
+    }
+
+    public float[] getSphereData() {
+        return spheres.data;
+    }
+
+    public float[] getEmitterData() {
+        return emitters;
+    }
+
+    public float[] getEmitterCdf() {
+        return emitterCdf;
+    }
+
+    public int getEmitterCount() {
+        return emitterCount;
+    }
+
+    public int getShapeCount() {
+        return boxes.liveCount + spheres.liveCount;
+    }
+
+    public float[] getInstanceData() {
+        return instances.data;
+    }
+
+    public int getInstanceCount() {
+        return instances.liveCount;
+    }
+
+    public float[] getPrototypeBoxData() {
+        return prototypes.getBoxData();
+    }
+
+    public float[] getPrototypeSphereData() {
+        return prototypes.getSphereData();
+    }
+
+    // Деревья всех упакованных прототипов в общих массивах
+    public BVH getPrototypeBVH() {
+        return prototypes.getBVH();
+    }
+
+    // Число слотов, включая освободившиеся, и упакованные записи для SceneFile
+    int getBoxSlots() {
+        return boxes.slotCount;
+    }
+
+    int getSphereSlots() {
+        return spheres.slotCount;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getShapeVersion() {
+        return shapeVersion;
+    }
+
+    public long getInstanceVersion() {
+        return instanceVersion;
+    }
+
+    // Запись слота объекта owner в data по смещению offset
+    private interface RecordWriter<T> {
+        void write(T owner, float[] data, int offset);
+    }
+
+    // Слоты записей одного типа: фигур или экземпляров
+    private static class Pool<T> {
+        final String name;
+        final int stride;
+        final int kind;  // Младший бит ссылки; -1 - ссылка без бита типа (экземпляры)
+        final RecordWriter<T> writer;
+        Object[] slotOwners = new Object[INITIAL_CAPACITY];
+        float[] data;
+        int[] freeSlots = new int[INITIAL_CAPACITY];
+        int freeCount;
+        int slotCount;  // Число использованных слотов, включая освобождённые
+        final BitSet liveSlots = new BitSet();  // Слоты с фигурой, экземпляром или записью из файла
+        int liveCount;
+        final BitSet dirtySlots = new BitSet();
+        boolean resized;
+
+        Pool(String name, int stride, int kind, RecordWriter<T> writer) {
+            this.name = name;
+            this.stride = stride;
+            this.kind = kind;
+            this.writer = writer;
+            data = new float[INITIAL_CAPACITY * stride];
+            clearSlots(0, INITIAL_CAPACITY);
+        }
+
+        int add(T owner) {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                slot = slotCount++;
+                ensureCapacity(slotCount);
+            }
+            slotOwners[slot] = owner;
+            liveSlots.set(slot);
+            liveCount++;
+            dirtySlots.set(slot);
+            return slot;
+        }
+
+        void remove(int slot) {
+            slotOwners[slot] = null;
+            liveSlots.clear(slot);
+            liveCount--;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            dirtySlots.set(slot);
+        }
+
+        // Записи копируются одним блоком; объекты Shape не создаются, слоты остаются без них
+        void load(FloatBuffer records, int count) {
+            if (slotCount > 0) {
+                throw new IllegalStateException("Записи (" + name + ") загружаются только в пустой буфер");
+            }
+            ensureCapacity(count);
+            records.get(data, 0, count * stride);
+            slotCount = count;
+            for (int slot = 0; slot < count; slot++) {
+                if (data[slot * stride] != 0) {
+                    liveSlots.set(slot);
+                    liveCount++;
+                } else {
+                    clearSlots(slot, slot + 1);
+                    if (freeCount == freeSlots.length) {
+                        freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+                    }
+                    freeSlots[freeCount++] = slot;
+                }
+            }
+            resized = true;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean flush() {
+            if (dirtySlots.isEmpty() && !resized) return false;
+
+            for (int start = dirtySlots.nextSetBit(0); start >= 0; start = dirtySlots.nextSetBit(start)) {
+                int end = dirtySlots.nextClearBit(start);
+                for (int slot = start; slot < end; slot++) {
+                    T owner = (T) slotOwners[slot];
+                    if (owner != null) {
+                        writer.write(owner, data, slot * stride);
+                    } else if (!liveSlots.get(slot)) {
+                        clearSlots(slot, slot + 1);
+                    }
+                }
+                if (DEBUG) {
+                    System.out.println("Перезаписаны слоты (" + name + ") " + start + ".." + (end - 1));
+                }
+                start = end;
+            }
+            dirtySlots.clear();
+            resized = false;
+            return true;
+        }
+
+        // Пустая запись не пересекается ни с одним лучом без проверки типа в ядре:
+        // отрицательные половины размеров и отрицательный квадрат радиуса. Пустые слоты экземпляров
+        // не попадают в дерево верхнего уровня и остаются нулями
+        void clearSlots(int from, int to) {
+            Arrays.fill(data, from * stride, to * stride, 0f);
+            for (int slot = from; slot < to; slot++) {
+                int offset = slot * stride;
+                if (kind == 0) {
+                    data[offset + 13] = -1f;
+                    data[offset + 14] = -1f;
+                    data[offset + 15] = -1f;
+                } else if (kind == 1) {
+                    data[offset + 14] = -1f;
+                }
+            }
+        }
+
+        void ensureCapacity(int required) {
+            if (required <= slotOwners.length) return;
+            int oldCapacity = slotOwners.length;
+            int capacity = Math.max(required, oldCapacity * 2);
+            slotOwners = Arrays.copyOf(slotOwners, capacity);
+            data = Arrays.copyOf(data, capacity * stride);
+            clearSlots(oldCapacity, capacity);
+            resized = true;
+        }
+
+        int countMaterial(int material) {
+            int count = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (liveSlots.get(slot) && (int) data[slot * stride] == material) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int collectEmitters(float[] target, int count) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                int offset = slot * stride;
+                if (!liveSlots.get(slot) || (int) data[offset] != EMITTER_MATERIAL) continue;
+                int base = count * EMITTER_STRIDE;
+                System.arraycopy(data, offset + 4, target, base, 3);
+                target[base + 3] = extent(offset);
+                System.arraycopy(data, offset + 1, target, base + 4, 3);
+                // Освещение от эмиттера не зависит от его размера, поэтому и выбор - только по яркости цвета
+                target[base + 7] = 0.2126f * data[offset + 1] + 0.7152f * data[offset + 2] + 0.0722f * data[offset + 3] + 1e-3f;
+                count++;
+            }
+            return count;
+        }
+
+        // Радиус описанной сферы: радиус сферы или половина диагонали параллелепипеда
+        float extent(int offset) {
+            if (kind == 1) {
+                return data[offset + 13];
+            }
+            float hx = data[offset + 13];
+            float hy = data[offset + 14];
+            float hz = data[offset + 15];
+            return (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        }
+
+        int collect(float[] bounds, int[] refs, int count) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (!liveSlots.get(slot)) continue;
+                System.arraycopy(data, slot * stride + 7, bounds, count * 6, 6);
+                refs[count++] = kind < 0 ? slot * stride : (slot * stride << 1) | kind;
+            }
+            return count;
+        }
+    }
+}
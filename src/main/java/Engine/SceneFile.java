@@ -0,0 +1,263 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.Shape;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import Drawable.Vector3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Двоичный файл сцены: записи фигур в том же виде, что в SceneBuffer, поэтому загрузка - это
+// FileChannel.map и копирование блоков прямо в массивы ядра, без объектов Shape.
+// Все числа little-endian, секции выровнены по 4 байта:
+//   заголовок   HEADER_SIZE байт: MAGIC, VERSION, флаги, шаги записей, число слотов, материалов и узлов BVH,
+//               длины массивов BVH, камера (положение, right, up, forward, fov - double)
+//   материалы   на каждый: id (int), длина имени (int), имя UTF-8 с дополнением до 4 байт
+//   записи      параллелепипеды boxSlots * Parallelepiped.GPU_STRIDE float, затем сферы
+//   BVH         если FLAG_BVH: границы узлов (float), связи узлов и примитивы (int)
+public class SceneFile {
+    private static final int MAGIC = 0x43535452;  // "RTSC"
+    private static final int VERSION = 1;
+    private static final int FLAG_BVH = 1;
+    private static final int HEADER_SIZE = 48 + 13 * Double.BYTES;
+
+    public static Scene read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Файл сцены больше 2 ГБ: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Не файл сцены: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия файла сцены " + version + ": " + path);
+            }
+            int flags = buffer.getInt();
+            if ((flags & ~FLAG_BVH) != 0) {
+                throw new IOException("Неизвестные флаги файла сцены " + flags + ": " + path);
+            }
+            int boxStride = buffer.getInt();
+            int sphereStride = buffer.getInt();
+            if (boxStride != Parallelepiped.GPU_STRIDE || sphereStride != Sphere.GPU_STRIDE) {
+                throw new IOException("Файл сцены записан с другим форматом записей фигур: " + path);
+            }
+            int boxSlots = buffer.getInt();
+            int sphereSlots = buffer.getInt();
+            int materialCount = buffer.getInt();
+            int nodeCount = buffer.getInt();
+            int boundsLength = buffer.getInt();
+            int linksLength = buffer.getInt();
+            int primitivesLength = buffer.getInt();
+            // Размеры из заголовка проверяются до того, как по ним что-то читается или выделяется
+            if (boxSlots < 0 || sphereSlots < 0 || materialCount < 0 || nodeCount < 0
+                    || boundsLength < 0 || linksLength < 0 || primitivesLength < 0) {
+                throw new IOException("Отрицательный размер в заголовке файла сцены: " + path);
+            }
+            if ((flags & FLAG_BVH) != 0 && (nodeCount == 0
+                    || boundsLength != nodeCount * 6L || linksLength != nodeCount * 2L)) {
+                throw new IOException("Размеры BVH не соответствуют числу узлов " + nodeCount + ": " + path);
+            }
+            Vector3 position = new Vector3(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            Vector3 right = new Vector3(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            Vector3 up = new Vector3(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            Vector3 forward = new Vector3(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            double fov = buffer.getDouble();
+
+            // Номера материалов в записях должны значить в этой сборке то же, что при записи файла
+            for (int i = 0; i < materialCount; i++) {
+                if (buffer.remaining() < 2 * Integer.BYTES) {
+                    throw new IOException("Файл сцены обрезан в таблице материалов: " + path);
+                }
+                int id = buffer.getInt();
+                int nameLength = buffer.getInt();
+                if (nameLength < 0 || ((long) buffer.position() + nameLength + 3 & ~3L) > buffer.limit()) {
+                    throw new IOException("Неверная длина имени материала " + nameLength + ": " + path);
+                }
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+                buffer.position(align(buffer.position()));
+                Material material;
+                try {
+                    material = Material.valueOf(new String(name, StandardCharsets.UTF_8));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Неизвестный материал в файле сцены: " + new String(name, StandardCharsets.UTF_8));
+                }
+                if (material.getId() != id) {
+                    throw new IOException("Материал " + material + " записан с номером " + id + ", а не " + material.getId());
+                }
+            }
+
+            long recordBytes = ((long) boxSlots * boxStride + (long) sphereSlots * sphereStride) * Float.BYTES;
+            long bvhBytes = ((long) boundsLength + linksLength + primitivesLength) * Integer.BYTES;
+            if (buffer.remaining() < recordBytes + ((flags & FLAG_BVH) != 0 ? bvhBytes : 0)) {
+                throw new IOException("Файл сцены обрезан: " + path);
+            }
+
+            Scene scene = new Scene(new Camera(position, orientation(right, up, forward), fov));
+            SceneBuffer sceneBuffer = scene.getSceneBuffer();
+            sceneBuffer.loadRecords(Shape.GPU_TYPE_BOX, buffer.asFloatBuffer(), boxSlots);
+            buffer.position(buffer.position() + boxSlots * boxStride * Float.BYTES);
+            sceneBuffer.loadRecords(Shape.GPU_TYPE_SPHERE, buffer.asFloatBuffer(), sphereSlots);
+            buffer.position(buffer.position() + sphereSlots * sphereStride * Float.BYTES);
+
+            if ((flags & FLAG_BVH) != 0) {
+                float[] bounds = new float[boundsLength];
+                int[] links = new int[linksLength];
+                int[] primitives = new int[primitivesLength];
+                buffer.asFloatBuffer().get(bounds);
+                buffer.position(buffer.position() + boundsLength * Float.BYTES);
+                buffer.asIntBuffer().get(links);
+                buffer.position(buffer.position() + linksLength * Integer.BYTES);
+                buffer.asIntBuffer().get(primitives);
+                checkBVH(bounds, links, primitives, nodeCount, boxSlots, sphereSlots, path);
+                sceneBuffer.setPrebuiltBVH(new BVH(bounds, links, primitives, nodeCount));
+            }
+            return scene;
+        }
+    }
+
+    // Записывает упакованные записи сцены и её камеру; с bvh = true сохраняет и дерево,
+    // чтобы загрузка не строила его заново. Экземпляры в формат не входят
+    public static void write(Scene scene, Path path, boolean bvh) throws IOException {
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.flush();
+        if (sceneBuffer.getInstanceCount() > 0) {
+            throw new IOException("Экземпляры не записываются в файл сцены, их " + sceneBuffer.getInstanceCount() + ": " + path);
+        }
+        BVH tree = bvh ? sceneBuffer.buildBVH() : null;
+        int boxSlots = sceneBuffer.getBoxSlots();
+        int sphereSlots = sceneBuffer.getSphereSlots();
+
+        Material[] materials = Material.values();
+        long size = HEADER_SIZE;
+        for (Material material : materials) {
+            size += 2 * Integer.BYTES + align(material.name().getBytes(StandardCharsets.UTF_8).length);
+        }
+        size += ((long) boxSlots * Parallelepiped.GPU_STRIDE + (long) sphereSlots * Sphere.GPU_STRIDE) * Float.BYTES;
+        if (tree != null) {
+            size += ((long) tree.getNodeBounds().length + tree.getNodeLinks().length + tree.getPrimitives().length) * Integer.BYTES;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(tree != null ? FLAG_BVH : 0);
+            buffer.putInt(Parallelepiped.GPU_STRIDE);
+            buffer.putInt(Sphere.GPU_STRIDE);
+            buffer.putInt(boxSlots);
+            buffer.putInt(sphereSlots);
+            buffer.putInt(materials.length);
+            buffer.putInt(tree != null ? tree.getNodeCount() : 0);
+            buffer.putInt(tree != null ? tree.getNodeBounds().length : 0);
+            buffer.putInt(tree != null ? tree.getNodeLinks().length : 0);
+            buffer.putInt(tree != null ? tree.getPrimitives().length : 0);
+            Camera camera = scene.getCamera();
+            synchronized (camera) {
+                putVector(buffer, camera.getPosition());
+                putVector(buffer, camera.getRight());
+                putVector(buffer, camera.getUp());
+                putVector(buffer, camera.getForward());
+                buffer.putDouble(camera.getFov());
+            }
+
+            for (Material material : materials) {
+                byte[] name = material.name().getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(material.getId());
+                buffer.putInt(name.length);
+                buffer.put(name);
+                buffer.position(align(buffer.position()));
+            }
+
+            putFloats(buffer, sceneBuffer.getBoxData(), boxSlots * Parallelepiped.GPU_STRIDE);
+            putFloats(buffer, sceneBuffer.getSphereData(), sphereSlots * Sphere.GPU_STRIDE);
+            if (tree != null) {
+                putFloats(buffer, tree.getNodeBounds(), tree.getNodeBounds().length);
+                buffer.asIntBuffer().put(tree.getNodeLinks());
+                buffer.position(buffer.position() + tree.getNodeLinks().length * Integer.BYTES);
+                buffer.asIntBuffer().put(tree.getPrimitives());
+            }
+            buffer.force();
+        }
+    }
+
+    // Ядро обходит дерево без проверок, поэтому все ссылки должны указывать внутрь массивов:
+    // потомки - на узлы с большим номером (так строит BVH.build, и циклов не бывает), глубина - в пределах
+    // стека обхода, примитивы листа - внутри primitives, примитивы - на начало записи существующего слота
+    private static void checkBVH(float[] bounds, int[] links, int[] primitives, int nodeCount,
+                                 int boxSlots, int sphereSlots, Path path) throws IOException {
+        // Пустое дерево BVH.build: один внутренний узел с вывернутыми границами, в который не входит ни один луч
+        if (nodeCount == 1 && links[1] == 0 && bounds[0] > bounds[3]) return;
+
+        int[] depth = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int first = links[node * 2];
+            int count = links[node * 2 + 1];
+            if (count < 0 || first < 0) {
+                throw new IOException("Неверные связи узла BVH " + node + ": " + path);
+            }
+            if (count > 0) {
+                if ((long) first + count > primitives.length) {
+                    throw new IOException("Лист BVH " + node + " выходит за массив примитивов: " + path);
+                }
+            } else {
+                if (first <= node || first + 1L >= nodeCount) {
+                    throw new IOException("Потомки узла BVH " + node + " вне дерева: " + first + ": " + path);
+                }
+                depth[first] = depth[node] + 1;
+                depth[first + 1] = depth[node] + 1;
+                if (depth[first] > BVH.STACK_SIZE - 2) {
+                    throw new IOException("BVH глубже стека обхода ядра: " + path);
+                }
+            }
+        }
+        for (int ref : primitives) {
+            int offset = ref >> 1;
+            boolean sphere = (ref & 1) != 0;
+            int stride = sphere ? Sphere.GPU_STRIDE : Parallelepiped.GPU_STRIDE;
+            int slots = sphere ? sphereSlots : boxSlots;
+            if (ref < 0 || offset % stride != 0 || offset / stride >= slots) {
+                throw new IOException("Примитив BVH " + ref + " ссылается за пределы записей фигур: " + path);
+            }
+        }
+    }
+
+    private static void putFloats(ByteBuffer buffer, float[] values, int length) {
+        buffer.asFloatBuffer().put(values, 0, length);
+        buffer.position(buffer.position() + length * Float.BYTES);
+    }
+
+    private static void putVector(ByteBuffer buffer, Vector3 vector) {
+        buffer.putDouble(vector.x);
+        buffer.putDouble(vector.y);
+        buffer.putDouble(vector.z);
+    }
+
+    // Столбцы поворота камеры - её оси right, up, forward (см. Matrix4x4.extractRight и соседние)
+    private static Matrix4x4 orientation(Vector3 right, Vector3 up, Vector3 forward) {
+        return new Matrix4x4(new double[][]{
+                {right.x, up.x, forward.x, 0},
+                {right.y, up.y, forward.y, 0},
+                {right.z, up.z, forward.z, 0},
+                {0, 0, 0, 1}
+        });
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+}
@@ -0,0 +1,180 @@
+package Engine;
+
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Геометрия сцены по столбцам (структура массивов) для Java-бэкендов: каждое поле фигуры - свой массив,
+// и один луч проверяется сразу с SPECIES.length() фигурами (Vector API, нужен --add-modules jdk.incubator.vector).
+// Столбец i - это слот i в массиве своего типа SceneBuffer, ссылка на фигуру та же, что в ядре.
+// Здесь только то, что читает проверка пересечения; материал и цвет остаются в записях SceneBuffer
+// и читаются ядром уже после попадания.
+// Параллелепипеды ориентированные, поэтому вместо min/max хранятся центр, половины размеров
+// и строки обратного поворота. Пустые и дополняющие столбцы (нулевые оси, как у пустых слотов)
+// не пересекаются ни с одним лучом.
+public class ShapeColumns {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, SPECIES.vectorShape());
+    private static final int LANES = SPECIES.length();
+
+    private int sphereCount;   // Кратно LANES
+    private float[] sphereX = new float[0];
+    private float[] sphereY = new float[0];
+    private float[] sphereZ = new float[0];
+    private float[] sphereRadiusSquared = new float[0];
+
+    private int boxCount;      // Кратно LANES
+    private float[] boxX = new float[0];
+    private float[] boxY = new float[0];
+    private float[] boxZ = new float[0];
+    private float[] halfX = new float[0];
+    private float[] halfY = new float[0];
+    private float[] halfZ = new float[0];
+    private float[][] axes = new float[9][0];  // axes[row * 3 + column]: мировые координаты -> локальные
+
+    // Переписывает столбцы из записей SceneBuffer (slots - число использованных слотов)
+    void update(float[] boxes, int boxSlots, float[] spheres, int sphereSlots) {
+        sphereCount = padded(sphereSlots);
+        if (sphereX.length < sphereCount) {
+            sphereX = new float[sphereCount];
+            sphereY = new float[sphereCount];
+            sphereZ = new float[sphereCount];
+            sphereRadiusSquared = new float[sphereCount];
+        }
+        for (int i = 0; i < sphereCount; i++) {
+            int offset = i * Sphere.GPU_STRIDE;
+            boolean used = i < sphereSlots;
+            sphereX[i] = used ? spheres[offset + 4] : 0;
+            sphereY[i] = used ? spheres[offset + 5] : 0;
+            sphereZ[i] = used ? spheres[offset + 6] : 0;
+            sphereRadiusSquared[i] = used ? spheres[offset + 14] : -1;
+        }
+
+        boxCount = padded(boxSlots);
+        if (boxX.length < boxCount) {
+            boxX = new float[boxCount];
+            boxY = new float[boxCount];
+            boxZ = new float[boxCount];
+            halfX = new float[boxCount];
+            halfY = new float[boxCount];
+            halfZ = new float[boxCount];
+            axes = new float[9][boxCount];
+        }
+        for (int i = 0; i < boxCount; i++) {
+            int offset = i * Parallelepiped.GPU_STRIDE;
+            boolean used = i < boxSlots;
+            boxX[i] = used ? boxes[offset + 4] : 0;
+            boxY[i] = used ? boxes[offset + 5] : 0;
+            boxZ[i] = used ? boxes[offset + 6] : 0;
+            halfX[i] = used ? boxes[offset + 13] : -1;
+            halfY[i] = used ? boxes[offset + 14] : -1;
+            halfZ[i] = used ? boxes[offset + 15] : -1;
+            for (int k = 0; k < 9; k++) { // Нулевые оси у дополняющих столбцов - как у пустых слотов SceneBuffer
+                axes[k][i] = used ? boxes[offset + 16 + k] : 0;
+            }
+        }
+    }
+
+    // Столбцов, проверяемых одним closestHit, включая дополняющие
+    int getColumnCount() {
+        return boxCount + sphereCount;
+    }
+
+    private static int padded(int count) {
+        return (count + LANES - 1) / LANES * LANES;
+    }
+
+    // Ссылка на ближайшую фигуру (как в RayTracingKernel) или -1. Из фигур с одинаковым t выбирается
+    // та, что раньше в порядке перебора ядра (параллелепипеды, затем сферы, по возрастанию слота).
+    // Проверки пересечения написаны прямо в цикле: вызов, который C2 не встроит (а метод с проверкой
+    // параллелепипедов для него слишком велик), упаковывает векторы в объекты на каждой итерации
+    int closestHit(float ox, float oy, float oz, float dx, float dy, float dz) {
+        FloatVector bestT = FloatVector.broadcast(SPECIES, Float.MAX_VALUE);
+        IntVector bestSlot = IntVector.broadcast(INT_SPECIES, -1);
+        IntVector lanes = IntVector.zero(INT_SPECIES).addIndex(1);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        for (int i = 0; i < boxCount; i += LANES) {
+            // Слэбы ориентированного параллелепипеда, см. RayTracingKernel.intersectBox
+            FloatVector px = FloatVector.fromArray(SPECIES, boxX, i).neg().add(ox);
+            FloatVector py = FloatVector.fromArray(SPECIES, boxY, i).neg().add(oy);
+            FloatVector pz = FloatVector.fromArray(SPECIES, boxZ, i).neg().add(oz);
+            FloatVector a00 = FloatVector.fromArray(SPECIES, axes[0], i);
+            FloatVector a01 = FloatVector.fromArray(SPECIES, axes[1], i);
+            FloatVector a02 = FloatVector.fromArray(SPECIES, axes[2], i);
+            FloatVector a10 = FloatVector.fromArray(SPECIES, axes[3], i);
+            FloatVector a11 = FloatVector.fromArray(SPECIES, axes[4], i);
+            FloatVector a12 = FloatVector.fromArray(SPECIES, axes[5], i);
+            FloatVector a20 = FloatVector.fromArray(SPECIES, axes[6], i);
+            FloatVector a21 = FloatVector.fromArray(SPECIES, axes[7], i);
+            FloatVector a22 = FloatVector.fromArray(SPECIES, axes[8], i);
+            FloatVector lox = a00.mul(px).add(a01.mul(py)).add(a02.mul(pz));
+            FloatVector loy = a10.mul(px).add(a11.mul(py)).add(a12.mul(pz));
+            FloatVector loz = a20.mul(px).add(a21.mul(py)).add(a22.mul(pz));
+            FloatVector invX = one.div(a00.mul(dx).add(a01.mul(dy)).add(a02.mul(dz)));
+            FloatVector invY = one.div(a10.mul(dx).add(a11.mul(dy)).add(a12.mul(dz)));
+            FloatVector invZ = one.div(a20.mul(dx).add(a21.mul(dy)).add(a22.mul(dz)));
+            FloatVector hx = FloatVector.fromArray(SPECIES, halfX, i);
+            FloatVector hy = FloatVector.fromArray(SPECIES, halfY, i);
+            FloatVector hz = FloatVector.fromArray(SPECIES, halfZ, i);
+            FloatVector tx0 = hx.neg().sub(lox).mul(invX);
+            FloatVector tx1 = hx.sub(lox).mul(invX);
+            FloatVector ty0 = hy.neg().sub(loy).mul(invY);
+            FloatVector ty1 = hy.sub(loy).mul(invY);
+            FloatVector tz0 = hz.neg().sub(loz).mul(invZ);
+            FloatVector tz1 = hz.sub(loz).mul(invZ);
+            FloatVector tMin = tx0.min(tx1).max(ty0.min(ty1)).max(tz0.min(tz1));
+            FloatVector tMax = tx0.max(tx1).min(ty0.max(ty1)).min(tz0.max(tz1));
+
+            VectorMask<Float> hit = tMax.compare(VectorOperators.GT, tMin)
+                    .and(tMin.compare(VectorOperators.GT, 0.0f))
+                    .and(tMin.compare(VectorOperators.LT, bestT));
+            bestT = bestT.blend(tMin, hit);
+            bestSlot = bestSlot.blend(lanes.add(i), hit.cast(INT_SPECIES));
+        }
+        // Наименьший слот среди линий с ближайшим t
+        float boxT = bestT.reduceLanes(VectorOperators.MIN);
+        int box = boxT == Float.MAX_VALUE ? -1
+                : bestSlot.reduceLanes(VectorOperators.MIN, bestT.compare(VectorOperators.EQ, boxT).cast(INT_SPECIES));
+
+        // Сфера побеждает, только если она строго ближе: ядро перебирает её после параллелепипедов
+        int sphere = closestSphere(ox, oy, oz, dx, dy, dz, boxT);
+        if (sphere >= 0) {
+            return (sphere * Sphere.GPU_STRIDE << 1) | 1;
+        }
+        return box < 0 ? -1 : box * Parallelepiped.GPU_STRIDE << 1;
+    }
+
+    // Слот ближайшей сферы, которая строго ближе limit, или -1; отдельный метод со своей компиляцией,
+    // через границу вызова проходят только скаляры
+    private int closestSphere(float ox, float oy, float oz, float dx, float dy, float dz, float limit) {
+        FloatVector bestT = FloatVector.broadcast(SPECIES, limit);
+        IntVector bestSlot = IntVector.broadcast(INT_SPECIES, -1);
+        IntVector lanes = IntVector.zero(INT_SPECIES).addIndex(1);
+        float a = dx * dx + dy * dy + dz * dz;  // dot(d, d), общее для всех линий
+        for (int i = 0; i < sphereCount; i += LANES) {
+            // См. RayTracingKernel.intersectSphere
+            FloatVector ocx = FloatVector.fromArray(SPECIES, sphereX, i).neg().add(ox);
+            FloatVector ocy = FloatVector.fromArray(SPECIES, sphereY, i).neg().add(oy);
+            FloatVector ocz = FloatVector.fromArray(SPECIES, sphereZ, i).neg().add(oz);
+            FloatVector b = ocx.mul(dx).add(ocy.mul(dy)).add(ocz.mul(dz)).mul(2.0f);
+            FloatVector c = ocx.mul(ocx).add(ocy.mul(ocy)).add(ocz.mul(ocz))
+                    .sub(FloatVector.fromArray(SPECIES, sphereRadiusSquared, i));
+            FloatVector discriminant = b.mul(b).sub(c.mul(4 * a));
+            FloatVector t = b.neg().sub(discriminant.sqrt()).div(2.0f * a);
+
+            VectorMask<Float> hit = discriminant.compare(VectorOperators.GE, 0.0f)
+                    .and(t.compare(VectorOperators.GT, 0.0f))
+                    .and(t.compare(VectorOperators.LT, bestT));
+            bestT = bestT.blend(t, hit);
+            bestSlot = bestSlot.blend(lanes.add(i), hit.cast(INT_SPECIES));
+        }
+        // Линии без попадания остаются с limit и слотом -1; при попадании меньший t только у обновлённых линий
+        float sphereT = bestT.reduceLanes(VectorOperators.MIN);
+        if (sphereT == limit) return -1;
+        return bestSlot.reduceLanes(VectorOperators.MIN, bestT.compare(VectorOperators.EQ, sphereT).cast(INT_SPECIES));
+    }
+}
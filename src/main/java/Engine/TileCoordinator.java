@@ -0,0 +1,221 @@
+package Engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Координатор распределённого рендера: упаковывает сцену в RenderJob один раз, раздаёт плитки
+// воркерам (TileWorker) по TCP и собирает кадр. На каждого воркера - свой поток с одной плиткой в работе.
+// Плитка воркера, который отвалился или не ответил за timeout, возвращается в очередь. Когда очередь
+// пуста, освободившиеся воркеры дублируют самые давно выданные плитки: медленный воркер не держит
+// весь кадр, засчитывается первый пришедший результат.
+public class TileCoordinator {
+    private static final int TILE_SIZE = 32;
+    private static final int MAX_COPIES = 2;           // Сколько воркеров одновременно считают одну плитку
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    private static final int WORKER_TIMEOUT_MS = Integer.getInteger("render.workerTimeoutMs", 60_000);
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tileCount;
+    private final byte[] job;  // Сериализованный RenderJob, общий для всех соединений
+
+    // Состояние раздачи; под блокировкой this
+    private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+    private final boolean[] done;
+    private final int[] copies;       // Воркеров, считающих плитку сейчас
+    private final long[] issuedAt;    // Когда плитка выдана последний раз (System.nanoTime)
+    private int remaining;
+    private int liveWorkers;
+    private long raysTraced;
+    private int reissued;
+    private int[] pixels;
+
+    public TileCoordinator(Scene scene, int width, int height, int samples, int seed) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileCount = tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE);
+        this.done = new boolean[tileCount];
+        this.copies = new int[tileCount];
+        this.issuedAt = new long[tileCount];
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(TileWorker.MAGIC);
+        out.writeInt(TileWorker.PROTOCOL_VERSION);
+        RenderJob.capture(scene, width, height, samples, seed).write(out);
+        out.flush();
+        this.job = bytes.toByteArray();
+    }
+
+    // Кадр целиком (0xRRGGBB на пиксель); IOException, если все воркеры отвалились раньше, чем он готов
+    public int[] render(List<InetSocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("Не задано ни одного воркера");
+        }
+        List<Thread> threads = new ArrayList<>();
+        synchronized (this) {
+            pixels = new int[width * height];
+            pending.clear();
+            for (int tile = 0; tile < tileCount; tile++) {
+                pending.add(tile);
+                done[tile] = false;
+                copies[tile] = 0;
+            }
+            remaining = tileCount;
+            liveWorkers = workers.size();
+            raysTraced = 0;
+            reissued = 0;
+        }
+        for (InetSocketAddress address : workers) {
+            Thread thread = new Thread(() -> serve(address), "tile-worker " + address);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try {
+            synchronized (this) {
+                while (remaining > 0 && liveWorkers > 0) {
+                    wait();
+                }
+                if (remaining > 0) {
+                    throw new IOException("Все воркеры недоступны, не готово плиток: " + remaining + " из " + tileCount);
+                }
+            }
+            // Потоки дописывают END и закрывают соединения; дубли, ещё идущие на медленных воркерах, не ждём
+            for (Thread thread : threads) {
+                thread.join(CONNECT_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Рендер прерван", e);
+        }
+        return pixels;
+    }
+
+    public synchronized long getRaysTraced() {
+        return raysTraced;
+    }
+
+    // Плиток, выданных повторно: после отказа воркера или вдогонку медленному
+    public synchronized int getReissuedTiles() {
+        return reissued;
+    }
+
+    private void serve(InetSocketAddress address) {
+        int tile = -1;
+        try (Socket socket = new Socket()) {
+            socket.connect(address, CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(WORKER_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.write(job);
+
+            while ((tile = nextTile()) >= 0) {
+                int x0 = (tile % tilesX) * TILE_SIZE;
+                int y0 = (tile / tilesX) * TILE_SIZE;
+                int x1 = Math.min(x0 + TILE_SIZE, width);
+                int y1 = Math.min(y0 + TILE_SIZE, height);
+                out.writeByte(TileWorker.TILE);
+                out.writeInt(x0);
+                out.writeInt(y0);
+                out.writeInt(x1);
+                out.writeInt(y1);
+                out.flush();
+
+                if (in.readInt() != x0 || in.readInt() != y0 || in.readInt() != x1 || in.readInt() != y1) {
+                    throw new IOException("Воркер вернул не ту плитку");
+                }
+                int[] tilePixels = new int[(x1 - x0) * (y1 - y0)];
+                for (int i = 0; i < tilePixels.length; i++) {
+                    tilePixels[i] = in.readInt();
+                }
+                complete(tile, tilePixels, in.readLong());
+                tile = -1;
+            }
+            out.writeByte(TileWorker.END);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Воркер " + address + " отключён: " + e);
+        } finally {
+            release(tile);
+        }
+    }
+
+    // Следующая плитка для воркера или -1, когда кадр готов. Пока есть чужие незавершённые плитки,
+    // но дублировать нечего, воркер ждёт: плитка может вернуться в очередь после отказа другого
+    private synchronized int nextTile() {
+        try {
+            while (remaining > 0) {
+                Integer tile = pending.poll();
+                if (tile == null) {
+                    tile = oldestIssued();
+                    if (tile >= 0) {
+                        reissued++;
+                    }
+                }
+                if (tile != null && tile >= 0) {
+                    copies[tile]++;
+                    issuedAt[tile] = System.nanoTime();
+                    return tile;
+                }
+                wait();
+            }
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private int oldestIssued() {
+        int oldest = -1;
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (!done[tile] && copies[tile] > 0 && copies[tile] < MAX_COPIES
+                    && (oldest < 0 || issuedAt[tile] < issuedAt[oldest])) {
+                oldest = tile;
+            }
+        }
+        return oldest;
+    }
+
+    private synchronized void complete(int tile, int[] tilePixels, long rays) {
+        copies[tile]--;
+        raysTraced += rays;
+        if (done[tile]) return;  // Дубль уже пришёл от другого воркера
+        done[tile] = true;
+        remaining--;
+        int x0 = (tile % tilesX) * TILE_SIZE;
+        int y0 = (tile / tilesX) * TILE_SIZE;
+        int tileWidth = Math.min(x0 + TILE_SIZE, width) - x0;
+        for (int i = 0; i < tilePixels.length; i += tileWidth) {
+            System.arraycopy(tilePixels, i, pixels, (y0 + i / tileWidth) * width + x0, tileWidth);
+        }
+        notifyAll();
+    }
+
+    // Воркер отключился: его плитка снова в очереди, если её больше никто не считает
+    private synchronized void release(int tile) {
+        if (tile >= 0) {
+            copies[tile]--;
+            if (!done[tile] && copies[tile] == 0) {
+                pending.addFirst(tile);
+                reissued++;
+            }
+        }
+        liveWorkers--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,166 @@
+package Engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+// Бэкенд на чистой Java: кадр делится на плитки 16x16, которые в порядке кривой Мортона
+// раздаются потокам ForkJoinPool. Задач столько, сколько потоков в пуле; каждая берёт плитки пачками
+// из общего счётчика, пока они не кончатся, поэтому выделение памяти за кадр не зависит от разрешения.
+// Трассировка - тот же код RayTracingKernel; в пакетном режиме первичные лучи плитки идут через PacketTracer.
+public class TileRenderer {
+    public static final int TILE_SIZE = 16;
+    private static final int TILES_PER_CLAIM = 4;  // Плиток, которые задача берёт из счётчика за раз
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int[] tileOrder;  // Индексы плиток (ty * tilesX + tx) в порядке Мортона
+    private final ForkJoinPool pool;
+    private final AtomicInteger nextTile = new AtomicInteger();  // Следующая невыданная плитка вызова render
+    // Прямоугольник, который рисует текущий вызов render. Весь кадр обходится в порядке tileOrder,
+    // часть кадра - по строкам своих плиток (regionColumns > 0), пиксели вне прямоугольника пропускаются
+    private int regionX0, regionY0, regionX1, regionY1;
+    private int regionColumns;
+    private int regionTileCount;
+    private boolean packetTracing;
+
+    public TileRenderer(int width, int height) {
+        this(width, height, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TileRenderer(int width, int height, int parallelism) {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.pool = new ForkJoinPool(parallelism);
+
+        // Сортируем плитки по ключу Мортона: соседние по порядку плитки соседствуют и на экране
+        long[] keys = new long[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int tile = ty * tilesX + tx;
+                keys[tile] = (mortonCode(tx, ty) << 32) | tile;
+            }
+        }
+        Arrays.sort(keys);
+        tileOrder = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            tileOrder[i] = (int) keys[i];
+        }
+    }
+
+    // Переплетает биты x и y: x в чётных разрядах, y в нечётных
+    private static long mortonCode(int x, int y) {
+        long code = 0;
+        for (int bit = 0; bit < 16; bit++) {
+            code |= (long) ((x >> bit) & 1) << (2 * bit);
+            code |= (long) ((y >> bit) & 1) << (2 * bit + 1);
+        }
+        return code;
+    }
+
+    // Рисует кадр по текущим параметрам ядра; возвращается, когда все плитки готовы
+    public void render(RayTracingKernel kernel) {
+        render(kernel, null);
+    }
+
+    // cancel проверяется перед каждой плиткой; как только он вернёт true, оставшиеся плитки пропускаются
+    public void render(RayTracingKernel kernel, BooleanSupplier cancel) {
+        regionX0 = 0;
+        regionY0 = 0;
+        regionX1 = width;
+        regionY1 = height;
+        regionColumns = 0;
+        regionTileCount = tileOrder.length;
+        invoke(kernel, cancel);
+    }
+
+    // Только пиксели прямоугольника [x0, x1) x [y0, y1) - так воркер распределённого рендера
+    // считает присланную плитку на всех ядрах своей машины
+    public void render(RayTracingKernel kernel, int x0, int y0, int x1, int y1) {
+        regionX0 = x0;
+        regionY0 = y0;
+        regionX1 = x1;
+        regionY1 = y1;
+        regionColumns = (x1 - 1) / TILE_SIZE - x0 / TILE_SIZE + 1;
+        regionTileCount = regionColumns * ((y1 - 1) / TILE_SIZE - y0 / TILE_SIZE + 1);
+        invoke(kernel, null);
+    }
+
+    private void invoke(RayTracingKernel kernel, BooleanSupplier cancel) {
+        nextTile.set(0);
+        pool.invoke(new TileTask(kernel, cancel, pool.getParallelism()));
+    }
+
+    public void setPacketTracing(boolean packetTracing) {
+        this.packetTracing = packetTracing;
+    }
+
+    public boolean isPacketTracing() {
+        return packetTracing;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class TileTask extends RecursiveAction {
+        private final RayTracingKernel kernel;
+        private final BooleanSupplier cancel;  // null - кадр не прерывается
+        private final int workers;             // Сколько задач-исполнителей породит эта
+
+        TileTask(RayTracingKernel kernel, BooleanSupplier cancel, int workers) {
+            this.kernel = kernel;
+            this.cancel = cancel;
+            this.workers = workers;
+        }
+
+        @Override
+        protected void compute() {
+            if (workers > 1) {
+                int half = workers / 2;
+                invokeAll(new TileTask(kernel, cancel, half), new TileTask(kernel, cancel, workers - half));
+                return;
+            }
+
+            // Своя копия ядра: рабочие массивы (стек BVH, генератор) у задачи свои, буферы сцены общие
+            RayTracingKernel worker = kernel.clone();
+            PacketTracer packets = packetTracing ? new PacketTracer(worker) : null;
+            for (int start = nextTile.getAndAdd(TILES_PER_CLAIM); start < regionTileCount;
+                 start = nextTile.getAndAdd(TILES_PER_CLAIM)) {
+                renderTiles(worker, packets, start, Math.min(start + TILES_PER_CLAIM, regionTileCount));
+            }
+        }
+
+        // После отмены оставшиеся плитки пропускаются, но счётчик всё равно выбирается до конца
+        private void renderTiles(RayTracingKernel worker, PacketTracer packets, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (cancel != null && cancel.getAsBoolean()) {
+                    return;
+                }
+                int tile = regionColumns == 0 ? tileOrder[i]
+                        : (regionY0 / TILE_SIZE + i / regionColumns) * tilesX + regionX0 / TILE_SIZE + i % regionColumns;
+                int x0 = Math.max((tile % tilesX) * TILE_SIZE, regionX0);
+                int y0 = Math.max((tile / tilesX) * TILE_SIZE, regionY0);
+                int x1 = Math.min((tile % tilesX) * TILE_SIZE + TILE_SIZE, regionX1);
+                int y1 = Math.min((tile / tilesX) * TILE_SIZE + TILE_SIZE, regionY1);
+                if (packets != null) {
+                    packets.renderTile(x0, y0, x1, y1, width);
+                    continue;
+                }
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        int id = y * width + x;
+                        if (worker.needsSample(id)) {
+                            worker.renderPixel(id);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
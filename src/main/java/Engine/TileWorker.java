@@ -0,0 +1,106 @@
+package Engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Воркер распределённого рендера: принимает соединения TileCoordinator по одному, получает RenderJob
+// и считает присланные плитки со всеми сэмплами накопления. Плитка делится на плитки TileRenderer
+// и считается на всех ядрах машины.
+// Протокол (DataOutputStream, big-endian):
+//   координатор -> воркер: MAGIC, PROTOCOL_VERSION, RenderJob, затем TILE x0 y0 x1 y1 ... END
+//   воркер -> координатор на каждую плитку: x0 y0 x1 y1, пиксели строками (0xRRGGBB), число лучей (long)
+public class TileWorker {
+    static final int MAGIC = 0x54494C45;  // "TILE"
+    static final int PROTOCOL_VERSION = 2;  // 2 - RenderJob с экземплярами
+    static final byte TILE = 1;
+    static final byte END = 0;
+
+    private final ServerSocket server;
+
+    public TileWorker(ServerSocket server) {
+        this.server = server;
+    }
+
+    // Обслуживает координаторов, пока сокет не закрыт; ошибка одного соединения не останавливает воркер
+    public void serve() throws IOException {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                handle(socket);
+            } catch (EOFException e) {
+                System.err.println("Координатор закрыл соединение");
+            } catch (IOException e) {
+                if (server.isClosed()) return;
+                System.err.println("Ошибка соединения с координатором: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (in.readInt() != MAGIC || in.readInt() != PROTOCOL_VERSION) {
+            throw new IOException("Неизвестный протокол");
+        }
+        RenderJob job = RenderJob.read(in);
+        int[] pixels = new int[job.width() * job.height()];
+        RayTracingKernel kernel = job.createKernel(pixels);
+        TileRenderer renderer = new TileRenderer(job.width(), job.height());
+        try {
+            serveTiles(in, out, job, kernel, renderer, pixels);
+        } finally {
+            renderer.shutdown();
+        }
+    }
+
+    private static void serveTiles(DataInputStream in, DataOutputStream out, RenderJob job, RayTracingKernel kernel,
+                                   TileRenderer renderer, int[] pixels) throws IOException {
+        while (in.readByte() == TILE) {
+            int x0 = in.readInt();
+            int y0 = in.readInt();
+            int x1 = in.readInt();
+            int y1 = in.readInt();
+            if (x0 < 0 || y0 < 0 || x1 > job.width() || y1 > job.height() || x0 >= x1 || y0 >= y1) {
+                throw new IOException("Плитка вне кадра: " + x0 + "," + y0 + " - " + x1 + "," + y1);
+            }
+            long rays = renderTile(kernel, renderer, job, x0, y0, x1, y1);
+
+            out.writeInt(x0);
+            out.writeInt(y0);
+            out.writeInt(x1);
+            out.writeInt(y1);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    out.writeInt(pixels[y * job.width() + x]);
+                }
+            }
+            out.writeLong(rays);
+            out.flush();
+        }
+    }
+
+    // Сэмпл s плитки - тот же, что кадр s локального рендера с тем же зерном: номер кадра и сэмпла совпадают.
+    // Каждый сэмпл - проход TileRenderer по плитке; копии ядра в его задачах берут номер сэмпла у kernel
+    private static long renderTile(RayTracingKernel kernel, TileRenderer renderer, RenderJob job,
+                                   int x0, int y0, int x1, int y1) {
+        int[] rayCounts = kernel.getRayCounts();
+        long rays = 0;
+        for (int sample = 0; sample < job.samples(); sample++) {
+            kernel.setSampleIndex(sample);
+            kernel.setFrame(sample, job.seed());
+            renderer.render(kernel, x0, y0, x1, y1);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    rays += rayCounts[y * job.width() + x];
+                }
+            }
+        }
+        return rays;
+    }
+}
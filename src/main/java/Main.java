@@ -1,34 +1,19 @@
-import Drawable.Material;
-import Drawable.Matrix4x4;
-import Drawable.ThreeDimObj.Parallelepiped;
-import Drawable.ThreeDimObj.Sphere;
-import Drawable.Vector3;
+import Engine.Renderer;
+import Engine.Scene;
+import Engine.SceneFile;
 
 import javax.swing.*;
-import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 
+// java Main [файл сцены]: без аргумента - демонстрационная сцена
 public class Main {
-    public static void main(String[] args) {
-        Camera camera = new Camera(
-                new Vector3(10, 30, -50),
-                Matrix4x4.identity(),
-                90
-        );
-
-        Scene scene = new Scene(camera);
-
-
-        //scene.addShape(new Sphere(new Vector3(25, 27, -10), Color.CYAN, 7, 10, 10, new Vector3(0, 0, 0), Material.GLASS));
-        scene.addShape(new Sphere(new Vector3(25, 7, -10), Color.CYAN, 7, 10, 10, new Vector3(0, 0, 0), Material.GLASS));
-        scene.addShape(new Parallelepiped(new Vector3(15, 10, 0), Color.MAGENTA, 10, 20, 10, new Vector3(0, 0, 45), Material.SEMI_MATTE));
-
-        scene.addShape(new Parallelepiped(new Vector3(20, -1, 0), Color.WHITE, 40, 2, 40, new Vector3(0, 0, 0), Material.GLOSS));
-        scene.addShape(new Parallelepiped(new Vector3(0, 30, 0), Color.ORANGE, 2, 60, 40, new Vector3(0, 0, 0), Material.MATTE));
-        scene.addShape(new Parallelepiped(new Vector3(40, 30, 0), Color.BLUE, 2, 60, 40, new Vector3(0, 0, 0), Material.MATTE));
-        scene.addShape(new Parallelepiped(new Vector3(20, 30, 10), Color.RED, 40, 60, 2, new Vector3(0, 0, 0), Material.SEMI_MATTE));
-        scene.addShape(new Parallelepiped(new Vector3(20, 60, 0), Color.WHITE, 40, 2, 40, new Vector3(0, 0, 0), Material.MATTE));
+    public static void main(String[] args) throws IOException {
+        Scene scene = args.length > 0 ? SceneFile.read(Path.of(args[0])) : DemoScene.create();
 
         Renderer renderer = new Renderer(scene);
 
@@ -36,14 +21,27 @@ public class Main {
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(800, 600);
         frame.add(renderer);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                renderer.dispose();
+            }
+        });
         frame.setVisible(true);
 
         frame.addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                scene.handleCameraInput(e.getKeyCode());
-                renderer.repaint();
+                if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    renderer.toggleOverlay();
+                    return;
+                }
+                if (e.getKeyCode() == KeyEvent.VK_F4) {
+                    renderer.cycleHeatmap();
+                    return;
+                }
+                renderer.handleCameraInput(e.getKeyCode());
             }
         });
     }
-}
\ No newline at end of file
+}
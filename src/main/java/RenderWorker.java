@@ -0,0 +1,41 @@
+import Engine.TileWorker;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+// Воркер распределённого рендера: java RenderWorker [--port P] [--bind адрес]
+// Порт 0 (по умолчанию) - любой свободный; выбранный порт печатается первой строкой stdout,
+// по ней BatchRender --spawn находит запущенные им воркеры
+public class RenderWorker {
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = 0;
+        String bind = "127.0.0.1";
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                usage("Не задано значение для " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--bind" -> bind = value;
+                default -> usage("Неизвестный параметр " + option);
+            }
+        }
+
+        try (ServerSocket server = new ServerSocket(port, 8, InetAddress.getByName(bind))) {
+            System.out.println("Воркер слушает порт " + server.getLocalPort());
+            System.out.flush();
+            new TileWorker(server).serve();
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Использование: RenderWorker [--port P] [--bind адрес]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,39 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.Vector3;
+import com.aparapi.device.JavaDevice;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Минимум в один сэмпл делил M2 на ноль: NaN-ошибка считалась сошедшейся после первого же сэмпла
+class AdaptiveSamplerTest {
+    private static final int SIZE = 16;
+
+    @Test
+    void singleSampleMinimumDoesNotConvergeOnFirstPass() {
+        assertActiveAfterFirstPass(RenderContext.Backend.APARAPI);
+        assertActiveAfterFirstPass(RenderContext.Backend.TILES);
+    }
+
+    private static void assertActiveAfterFirstPass(RenderContext.Backend backend) {
+        Scene scene = new Scene(new Camera(new Vector3(0, 0, -10), Matrix4x4.identity(), 90));
+        scene.addShape(new Parallelepiped(new Vector3(0, 0, 10), Color.WHITE, 8, 8, 8, new Vector3(0, 0, 0), Material.MATTE));
+        RenderContext context = new RenderContext(scene, SIZE, SIZE);
+        try {
+            context.setBackend(backend);
+            context.setDevice(JavaDevice.SEQUENTIAL);
+            AdaptiveSampler sampler = new AdaptiveSampler(SIZE, SIZE, 64, 1, 64, 0.01f);
+            context.setAdaptiveSampler(sampler);
+            context.render();
+            assertEquals(SIZE * SIZE, sampler.getActiveCount(), backend + ": пиксели сошлись по одному сэмплу");
+        } finally {
+            context.dispose();
+        }
+    }
+}
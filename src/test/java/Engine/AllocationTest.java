@@ -0,0 +1,74 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import Drawable.Vector3;
+import com.aparapi.device.JavaDevice;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Горячий путь трассировки не выделяет память: после прогрева выделение за кадр - постоянные накладные
+// расходы контекста и Aparapi, оно не растёт ни с разрешением, ни с числом накопленных сэмплов
+class AllocationTest {
+    private static final int WARMUP_FRAMES = 100;
+    private static final int MEASURED_FRAMES = 8;
+    private static final long TOLERANCE = 512;  // Байт; один объект на пиксель 48x48 - это уже десятки КБ
+
+    @Test
+    void sequentialKernelDoesNotAllocatePerPixel() {
+        assertConstantAllocation(RenderContext.Backend.APARAPI);
+    }
+
+    @Test
+    void tilesDoNotAllocatePerPixel() {
+        assertConstantAllocation(RenderContext.Backend.TILES);
+    }
+
+    private static void assertConstantAllocation(RenderContext.Backend backend) {
+        assertTrue(RenderMetrics.allocatedBytes() >= 0, "счётчик выделения памяти потоками недоступен");
+        // Первым идёт большой кадр: его прогрев заодно доводит горячий путь до C2 и для остальных замеров
+        long large = allocatedPerFrame(backend, 48, WARMUP_FRAMES);
+        long small = allocatedPerFrame(backend, 16, WARMUP_FRAMES);
+        long moreSamples = allocatedPerFrame(backend, 48, WARMUP_FRAMES * 3);
+        assertTrue(Math.abs(large - small) <= TOLERANCE, backend + ": 16x16 - " + small + " Б за кадр, 48x48 - " + large);
+        assertTrue(Math.abs(moreSamples - large) <= TOLERANCE,
+                backend + ": после " + WARMUP_FRAMES + " сэмплов " + large + " Б за кадр, после " + WARMUP_FRAMES * 3 + " - " + moreSamples);
+    }
+
+    // Наименьшее выделение за кадр среди MEASURED_FRAMES кадров после warmup кадров накопления
+    private static long allocatedPerFrame(RenderContext.Backend backend, int size, int warmup) {
+        RenderContext context = new RenderContext(scene(), size, size);
+        try {
+            context.setBackend(backend);
+            context.setDevice(JavaDevice.SEQUENTIAL);
+            context.setProgressive(true);
+            for (int i = 0; i < warmup; i++) {
+                context.render();
+            }
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                long before = RenderMetrics.allocatedBytes();
+                context.render();
+                min = Math.min(min, RenderMetrics.allocatedBytes() - before);
+            }
+            return min;
+        } finally {
+            context.dispose();
+        }
+    }
+
+    private static Scene scene() {
+        Scene scene = new Scene(new Camera(new Vector3(0, 0, -10), Matrix4x4.identity(), 90));
+        Vector3 noRotation = new Vector3(0, 0, 0);
+        scene.addShape(new Parallelepiped(new Vector3(0, -3, 10), Color.WHITE, 20, 1, 20, noRotation, Material.MATTE));
+        scene.addShape(new Parallelepiped(new Vector3(-2, 0, 8), Color.RED, 2, 2, 2, new Vector3(0, 30, 0), Material.GLOSS));
+        scene.addShape(new Sphere(new Vector3(2, 0, 8), Color.BLUE, 1.5, 4, 4, noRotation, Material.GLASS));
+        scene.addShape(new Sphere(new Vector3(0, 5, 8), Color.WHITE, 1, 4, 4, noRotation, Material.EMITTER));
+        return scene;
+    }
+}
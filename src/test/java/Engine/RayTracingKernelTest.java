@@ -0,0 +1,29 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RayTracingKernelTest {
+    // Луч идёт точно по плоскости грани x = 1: у параллельной оси (1 - 1) * inf = NaN, это должно быть промахом
+    @Test
+    void rayAlongBoxFaceMisses() {
+        Scene scene = new Scene(new Camera(new Vector3(0, 0, -10), Matrix4x4.identity(), 90));
+        scene.addShape(new Parallelepiped(new Vector3(0, 0, 0), Color.RED, 2, 2, 2, new Vector3(0, 0, 0), Material.MATTE));
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.flush();
+        RayTracingKernel kernel = new RayTracingKernel(1, 1, new float[]{20, 30, -30}, new int[1], 10, 10);
+        kernel.setScene(sceneBuffer.getBoxData(), sceneBuffer.getSphereData(), sceneBuffer.buildBVH());
+
+        assertEquals(-1.0f, kernel.intersectOne(0, 1, -5, 0, 0, 1, 0));
+        assertEquals(-1.0f, kernel.closestHit(1, -5, 0, 0, 1, 0));
+        // Контроль: тот же луч чуть внутри грани попадает в нижнюю грань
+        assertEquals(4.0f, kernel.intersectOne(0, 0.5f, -5, 0, 0, 1, 0), 1e-5f);
+    }
+}
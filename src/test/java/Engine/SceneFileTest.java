@@ -0,0 +1,99 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import Drawable.Vector3;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Повреждённый файл сцены отклоняется с IOException, а не доходит до ядра
+class SceneFileTest {
+    // Смещения полей заголовка (см. SceneFile.write)
+    private static final int BOX_SLOTS = 20;
+    private static final int MATERIAL_COUNT = 28;
+    private static final int NODE_COUNT = 32;
+    private static final int BOUNDS_LENGTH = 36;
+    private static final int LINKS_LENGTH = 40;
+    private static final int PRIMITIVES_LENGTH = 44;
+    private static final int FIRST_MATERIAL = 48 + 13 * Double.BYTES;
+
+    @TempDir
+    Path directory;
+    private Path file;
+
+    @BeforeEach
+    void writeScene() throws IOException {
+        Scene scene = new Scene(new Camera(new Vector3(0, 0, -10), Matrix4x4.identity(), 90));
+        for (int i = 0; i < 12; i++) {
+            scene.addShape(new Parallelepiped(new Vector3(i * 3, 0, 10), Color.RED, 1, 1, 1, new Vector3(0, 0, 0), Material.MATTE));
+            scene.addShape(new Sphere(new Vector3(i * 3, 3, 10), Color.BLUE, 1, 4, 4, new Vector3(0, 0, 0), Material.GLOSS));
+        }
+        file = directory.resolve("scene.bin");
+        SceneFile.write(scene, file, true);
+    }
+
+    @Test
+    void readsWrittenScene() throws IOException {
+        assertEquals(24, SceneFile.read(file).getSceneBuffer().getShapeCount());
+    }
+
+    @Test
+    void rejectsNegativeCounts() throws IOException {
+        assertRejected(data -> data.putInt(BOX_SLOTS, -1));
+        assertRejected(data -> data.putInt(MATERIAL_COUNT, -5));
+        assertRejected(data -> data.putInt(FIRST_MATERIAL + Integer.BYTES, -8));
+        assertRejected(data -> data.putInt(FIRST_MATERIAL + Integer.BYTES, Integer.MAX_VALUE));
+    }
+
+    // Сумма длин массивов BVH переполняет int: раньше это проходило проверку размера файла
+    @Test
+    void rejectsOverflowingBvhLengths() throws IOException {
+        assertRejected(data -> {
+            data.putInt(NODE_COUNT, 0x08000000);
+            data.putInt(BOUNDS_LENGTH, 0x30000000);
+            data.putInt(LINKS_LENGTH, 0x10000000);
+            data.putInt(PRIMITIVES_LENGTH, 0x70000000);
+        });
+    }
+
+    @Test
+    void rejectsBvhRefsOutsideArrays() throws IOException {
+        assertRejected(data -> data.putInt(primitivesOffset(data), 1_000_000 << 1));
+        assertRejected(data -> data.putInt(primitivesOffset(data), (Sphere.GPU_STRIDE + 1) << 1 | 1));
+        assertRejected(data -> data.putInt(linksOffset(data), 0));          // Корень - сам себе потомок
+        assertRejected(data -> data.putInt(linksOffset(data), 1 << 20));    // Потомки за последним узлом
+        assertRejected(data -> data.putInt(linksOffset(data) + Integer.BYTES, -1));
+    }
+
+    private void assertRejected(Consumer<ByteBuffer> corruption) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        corruption.accept(data);
+        Path corrupted = directory.resolve("corrupted.bin");
+        Files.write(corrupted, bytes);
+        assertThrows(IOException.class, () -> SceneFile.read(corrupted));
+    }
+
+    // Примитивы - последний массив файла, связи узлов - перед ними
+    private static int primitivesOffset(ByteBuffer data) {
+        return data.capacity() - data.getInt(PRIMITIVES_LENGTH) * Integer.BYTES;
+    }
+
+    private static int linksOffset(ByteBuffer data) {
+        return primitivesOffset(data) - data.getInt(LINKS_LENGTH) * Integer.BYTES;
+    }
+}
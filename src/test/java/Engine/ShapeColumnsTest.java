@@ -0,0 +1,59 @@
+package Engine;
+
+import Drawable.Material;
+import Drawable.Matrix4x4;
+import Drawable.ThreeDimObj.Parallelepiped;
+import Drawable.ThreeDimObj.Sphere;
+import Drawable.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Перебор столбцов (бэкенды TILES и PACKETS) должен находить то же, что линейный перебор записей ядра
+class ShapeColumnsTest {
+    private static final Vector3 EYE = new Vector3(0, 0, -10);
+
+    // Фигур меньше ширины вектора: дополняющие столбцы не должны превращаться в куб в начале координат
+    @Test
+    void paddingLanesDoNotHit() {
+        Scene scene = new Scene(new Camera(EYE, Matrix4x4.identity(), 90));
+        scene.addShape(new Parallelepiped(new Vector3(0, 0, 50), Color.RED, 4, 4, 4, new Vector3(0, 0, 0), Material.MATTE));
+        assertSameHits(scene);
+    }
+
+    @Test
+    void mixedShapesMatchLinearScan() {
+        Scene scene = new Scene(new Camera(EYE, Matrix4x4.identity(), 90));
+        scene.addShape(new Parallelepiped(new Vector3(-3, 0, 20), Color.RED, 2, 3, 4, new Vector3(10, 20, 30), Material.MATTE));
+        scene.addShape(new Parallelepiped(new Vector3(3, 2, 25), Color.GREEN, 3, 3, 3, new Vector3(0, 45, 0), Material.GLOSS));
+        scene.addShape(new Parallelepiped(new Vector3(0, -4, 30), Color.BLUE, 20, 1, 20, new Vector3(0, 0, 0), Material.MATTE));
+        scene.addShape(new Sphere(new Vector3(0, 0, 15), Color.WHITE, 1.5, 4, 4, new Vector3(0, 0, 0), Material.GLASS));
+        scene.addShape(new Sphere(new Vector3(5, -2, 18), Color.ORANGE, 2, 4, 4, new Vector3(0, 0, 0), Material.MATTE));
+        assertSameHits(scene);
+    }
+
+    private static void assertSameHits(Scene scene) {
+        SceneBuffer sceneBuffer = scene.getSceneBuffer();
+        sceneBuffer.flush();
+        RayTracingKernel kernel = new RayTracingKernel(1, 1, new float[]{20, 30, -30}, new int[1], 10, 10);
+        kernel.setScene(sceneBuffer.getBoxData(), sceneBuffer.getSphereData(), sceneBuffer.buildBVH());
+        kernel.setEmitters(sceneBuffer.getEmitterData(), sceneBuffer.getEmitterCdf(), sceneBuffer.getEmitterCount());
+        kernel.setUseBvh(false);
+        ShapeColumns columns = sceneBuffer.getColumns();
+
+        float ox = (float) EYE.x, oy = (float) EYE.y, oz = (float) EYE.z;
+        for (int y = -20; y <= 20; y++) {
+            for (int x = -20; x <= 20; x++) {
+                Vector3 d = new Vector3(x * 0.02, y * 0.02, 1).normalize();
+                float dx = (float) d.x, dy = (float) d.y, dz = (float) d.z;
+                kernel.setShapeColumns(null);
+                float expected = kernel.closestHit(ox, oy, oz, dx, dy, dz);
+                kernel.setShapeColumns(columns);
+                float actual = kernel.closestHit(ox, oy, oz, dx, dy, dz);
+                assertEquals(expected, actual, "луч (" + x + ", " + y + ")");
+            }
+        }
+    }
+}